@@ -0,0 +1,93 @@
+package org.david.crm.concurrent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// coste de logAsync para el hilo de la peticion (encolar en el anillo) con el escritor en marcha, con uno y con varios hilos,
+// frente a un evento estructurado (sin concatenar) y a uno de un nivel desactivado. Con -prof gc se ve lo que reserva cada uno.
+// Al terminar imprime cuantas lineas llegaron al fichero y cuantas se descartaron con la cola llena (productores mas rapidos que el disco).
+// Escribe application.log en el directorio de trabajo (target/jmh con el perfil jmh) y lo borra al terminar
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncLogServiceBenchmark {
+    
+    private static final String MENSAJE = "GET /api/clientes - 250 clientes recuperados";
+    private static final String NOMBRE = "Ana";
+    
+    private int id;
+    
+    private AsyncLogService logService;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        logService = new AsyncLogService();
+        logService.start(); // fuera de CDI no hay @PostConstruct
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        logService.shutdown();
+        Path logFile = Paths.get("application.log");
+        System.out.println("[AsyncLogServiceBenchmark] " + logService.getLogCount() + " lineas, "
+            + Files.size(logFile) / 1024 + " KB, " + logService.getDroppedMessages() + " descartadas");
+        Files.deleteIfExists(logFile);
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public void logAsync_1() {
+        logService.logAsync(MENSAJE);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void logAsync_4() {
+        logService.logAsync(MENSAJE);
+    }
+    
+    // lo que hacia ClienteServlet: concatenar el mensaje en el hilo de la peticion
+    @Benchmark
+    @Threads(1)
+    public void logConcatenado_1() {
+        logService.logAsync("GET /api/clientes/" + ++id + " - Cliente recuperado: " + NOMBRE);
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public void logEvent_1() {
+        logService.info("cliente.recuperado").with("id", ++id).with("nombre", NOMBRE).log();
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void logEvent_4() {
+        logService.info("cliente.recuperado").with("id", ++id).with("nombre", NOMBRE).log();
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public void logEventDesactivado_1() {
+        logService.debug("cliente.recuperado").with("id", ++id).with("nombre", NOMBRE).log();
+    }
+}
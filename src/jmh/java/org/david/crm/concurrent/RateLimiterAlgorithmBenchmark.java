@@ -0,0 +1,101 @@
+package org.david.crm.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// tryConsume con cada algoritmo (ratelimit.algorithm) a 1, 8 y 32 hilos.
+// propio: cada hilo reparte sus llamadas entre sus propios clientes (usuarios con sesion), todo se acepta y cada llamada escribe su hueco;
+// compartido: todos los hilos sobre el mismo cliente, que agota el limite enseguida y casi todo se rechaza
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterAlgorithmBenchmark {
+    
+    private static final String ROL = "pseudoadmin";
+    private static final String SHARED_KEY = "comercial:1";
+    private static final int KEYS_PER_THREAD = 1024; // con limite alto cada clave recibe menos de lo que se rellena
+    
+    @Param({ "tokenBucket", "slidingWindow", "fixedWindow" })
+    private String algorithm;
+    
+    private RateLimiter rateLimiter;
+    private final AtomicInteger nextClient = new AtomicInteger();
+    
+    @Setup
+    public void setup() {
+        // limite alto para que los clientes propios no se queden sin cupo durante la medicion
+        System.setProperty("ratelimit.algorithm", algorithm);
+        System.setProperty("ratelimit." + ROL + ".capacity", "16000");
+        System.setProperty("ratelimit." + ROL + ".refillPerMinute", "1000000");
+        rateLimiter = new RateLimiter();
+    }
+    
+    @State(Scope.Thread)
+    public static class Clients {
+        private final String[] keys = new String[KEYS_PER_THREAD];
+        private int next;
+        
+        @Setup
+        public void setup(RateLimiterAlgorithmBenchmark benchmark) {
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                keys[i] = "cliente:" + benchmark.nextClient.incrementAndGet();
+            }
+        }
+        
+        String nextKey() {
+            return keys[next++ & (KEYS_PER_THREAD - 1)];
+        }
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public boolean propio_1(Clients clients) {
+        return rateLimiter.tryConsume(clients.nextKey(), ROL, 1).isAllowed();
+    }
+    
+    @Benchmark
+    @Threads(8)
+    public boolean propio_8(Clients clients) {
+        return rateLimiter.tryConsume(clients.nextKey(), ROL, 1).isAllowed();
+    }
+    
+    @Benchmark
+    @Threads(32)
+    public boolean propio_32(Clients clients) {
+        return rateLimiter.tryConsume(clients.nextKey(), ROL, 1).isAllowed();
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public boolean compartido_1() {
+        return rateLimiter.tryConsume(SHARED_KEY, ROL, 1).isAllowed();
+    }
+    
+    @Benchmark
+    @Threads(8)
+    public boolean compartido_8() {
+        return rateLimiter.tryConsume(SHARED_KEY, ROL, 1).isAllowed();
+    }
+    
+    @Benchmark
+    @Threads(32)
+    public boolean compartido_32() {
+        return rateLimiter.tryConsume(SHARED_KEY, ROL, 1).isAllowed();
+    }
+}
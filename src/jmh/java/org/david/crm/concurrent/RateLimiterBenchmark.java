@@ -0,0 +1,103 @@
+package org.david.crm.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// allowRequest con 1 a 64 hilos. hot: todos los hilos sobre la misma clave (una IP detras de un NAT);
+// cold: cada llamada con una clave distinta de un conjunto grande (muchos clientes, fallos de cache y altas en el mapa)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+    
+    private static final int COLD_KEYS = 1 << 16;
+    private static final String HOT_KEY = "192.168.1.10";
+    
+    private RateLimiter rateLimiter;
+    private String[] coldKeys;
+    
+    @Setup
+    public void setup() {
+        rateLimiter = new RateLimiter();
+        coldKeys = new String[COLD_KEYS];
+        for (int i = 0; i < COLD_KEYS; i++) {
+            coldKeys[i] = "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Cursor { // posicion propia de cada hilo en las claves frias
+        private int next;
+        
+        @Setup
+        public void setup() {
+            next = (int) (Thread.currentThread().getId() * 7919);
+        }
+        
+        int nextIndex() {
+            return next++ & (COLD_KEYS - 1);
+        }
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public boolean hot_1() {
+        return rateLimiter.allowRequest(HOT_KEY);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public boolean hot_4() {
+        return rateLimiter.allowRequest(HOT_KEY);
+    }
+    
+    @Benchmark
+    @Threads(16)
+    public boolean hot_16() {
+        return rateLimiter.allowRequest(HOT_KEY);
+    }
+    
+    @Benchmark
+    @Threads(64)
+    public boolean hot_64() {
+        return rateLimiter.allowRequest(HOT_KEY);
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public boolean cold_1(Cursor cursor) {
+        return rateLimiter.allowRequest(coldKeys[cursor.nextIndex()]);
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public boolean cold_4(Cursor cursor) {
+        return rateLimiter.allowRequest(coldKeys[cursor.nextIndex()]);
+    }
+    
+    @Benchmark
+    @Threads(16)
+    public boolean cold_16(Cursor cursor) {
+        return rateLimiter.allowRequest(coldKeys[cursor.nextIndex()]);
+    }
+    
+    @Benchmark
+    @Threads(64)
+    public boolean cold_64(Cursor cursor) {
+        return rateLimiter.allowRequest(coldKeys[cursor.nextIndex()]);
+    }
+}
@@ -0,0 +1,79 @@
+package org.david.crm.concurrent.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// lo que hace StatisticsFilter en cada peticion (total + ok/error + tiempo) con 1 a 64 hilos sobre los mismos contadores,
+// y lecturas de getSummary() mientras otros hilos escriben (/api/estadisticas consultado durante carga)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiStatisticsBenchmark {
+    
+    private ApiStatistics apiStatistics;
+    
+    @Setup
+    public void setup() {
+        apiStatistics = new ApiStatistics();
+    }
+    
+    private void registrarPeticion() {
+        apiStatistics.incrementTotalRequests();
+        apiStatistics.incrementSuccessfulRequests();
+        apiStatistics.addResponseTime(12);
+    }
+    
+    @Benchmark
+    @Threads(1)
+    public void peticion_1() {
+        registrarPeticion();
+    }
+    
+    @Benchmark
+    @Threads(4)
+    public void peticion_4() {
+        registrarPeticion();
+    }
+    
+    @Benchmark
+    @Threads(16)
+    public void peticion_16() {
+        registrarPeticion();
+    }
+    
+    @Benchmark
+    @Threads(64)
+    public void peticion_64() {
+        registrarPeticion();
+    }
+    
+    @Benchmark
+    @Group("lecturaConCarga")
+    @GroupThreads(15)
+    public void escritor() {
+        registrarPeticion();
+    }
+    
+    @Benchmark
+    @Group("lecturaConCarga")
+    @GroupThreads(1)
+    public ApiStatistics.StatisticsSummary lector() {
+        return apiStatistics.getSummary();
+    }
+}
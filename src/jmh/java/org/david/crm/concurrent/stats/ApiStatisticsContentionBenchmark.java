@@ -0,0 +1,113 @@
+package org.david.crm.concurrent.stats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// contadores de ApiStatistics (LongAdder) frente a la copia con AtomicInteger/AtomicLong a 8, 32 y 64 hilos,
+// y getSummary() con 31 escritores. Es el registro de una peticion sin el histograma por ruta, para comparar solo los contadores
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiStatisticsContentionBenchmark {
+    
+    private ApiStatistics adder;
+    private AtomicApiStatistics atomic;
+    
+    @Setup
+    public void setup() {
+        adder = new ApiStatistics();
+        atomic = new AtomicApiStatistics();
+    }
+    
+    private void registrarAdder() {
+        adder.incrementTotalRequests();
+        adder.incrementSuccessfulRequests();
+        adder.addResponseTime(12);
+    }
+    
+    private void registrarAtomic() {
+        atomic.incrementTotalRequests();
+        atomic.incrementSuccessfulRequests();
+        atomic.addResponseTime(12);
+    }
+    
+    @Benchmark
+    @Threads(8)
+    public void adder_8() {
+        registrarAdder();
+    }
+    
+    @Benchmark
+    @Threads(32)
+    public void adder_32() {
+        registrarAdder();
+    }
+    
+    @Benchmark
+    @Threads(64)
+    public void adder_64() {
+        registrarAdder();
+    }
+    
+    @Benchmark
+    @Threads(8)
+    public void atomic_8() {
+        registrarAtomic();
+    }
+    
+    @Benchmark
+    @Threads(32)
+    public void atomic_32() {
+        registrarAtomic();
+    }
+    
+    @Benchmark
+    @Threads(64)
+    public void atomic_64() {
+        registrarAtomic();
+    }
+    
+    @Benchmark
+    @Group("adderLectura")
+    @GroupThreads(31)
+    public void adderEscritor() {
+        registrarAdder();
+    }
+    
+    @Benchmark
+    @Group("adderLectura")
+    @GroupThreads(1)
+    public ApiStatistics.StatisticsSummary adderLector() {
+        return adder.getSummary();
+    }
+    
+    @Benchmark
+    @Group("atomicLectura")
+    @GroupThreads(31)
+    public void atomicEscritor() {
+        registrarAtomic();
+    }
+    
+    @Benchmark
+    @Group("atomicLectura")
+    @GroupThreads(1)
+    public ApiStatistics.StatisticsSummary atomicLector() {
+        return atomic.getSummary();
+    }
+}
@@ -0,0 +1,40 @@
+package org.david.crm.concurrent.stats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// copia de los contadores de ApiStatistics antes de pasar a LongAdder (AtomicInteger/AtomicLong compartidos),
+// solo para comparar en ApiStatisticsContentionBenchmark
+class AtomicApiStatistics {
+    
+    private final AtomicInteger totalRequests = new AtomicInteger(0);
+    private final AtomicInteger successfulRequests = new AtomicInteger(0);
+    private final AtomicInteger failedRequests = new AtomicInteger(0);
+    private final AtomicInteger logsWritten = new AtomicInteger(0);
+    private final AtomicLong totalResponseTime = new AtomicLong(0);
+    
+    void incrementTotalRequests() {
+        totalRequests.incrementAndGet();
+    }
+    
+    void incrementSuccessfulRequests() {
+        successfulRequests.incrementAndGet();
+    }
+    
+    void addResponseTime(long milliseconds) {
+        totalResponseTime.addAndGet(milliseconds);
+    }
+    
+    ApiStatistics.StatisticsSummary getSummary() {
+        int total = totalRequests.get();
+        return new ApiStatistics.StatisticsSummary(
+            total,
+            successfulRequests.get(),
+            failedRequests.get(),
+            logsWritten.get(),
+            0,
+            0,
+            total == 0 ? 0.0 : (double) totalResponseTime.get() / total
+        );
+    }
+}
@@ -0,0 +1,167 @@
+package org.david.crm.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.david.crm.model.Cliente;
+import org.david.crm.model.Comercial;
+import org.david.crm.model.Factura;
+import org.david.crm.model.Producto;
+import org.david.crm.model.Seccion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+
+// serializacion de facturas tal como salen de los repositorios: grafo cargado con JOIN FETCH
+// (el comercial del cliente sigue siendo un proxy sin cargar) y factura recien creada con las tres claves como getReference
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonUtilBenchmark {
+    
+    private static final int LISTA = 100; // filas por respuesta de lista
+    
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private Factura facturaCargada;
+    private Factura facturaConReferencias;
+    private List<Factura> facturas;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        emf = Persistence.createEntityManagerFactory("crmPU", offlineProperties());
+        em = emf.createEntityManager(); // los proxies necesitan la sesion abierta para resolver el nombre del id
+        
+        facturas = new ArrayList<>(LISTA);
+        for (int i = 0; i < LISTA; i++) {
+            facturas.add(facturaCargada(i));
+        }
+        facturaCargada = facturas.get(0);
+        
+        facturaConReferencias = new Factura();
+        facturaConReferencias.setFacturaId("F-REF-1");
+        facturaConReferencias.setCliente(em.getReference(Cliente.class, 1));
+        facturaConReferencias.setComercial(em.getReference(Comercial.class, 1));
+        facturaConReferencias.setProducto(em.getReference(Producto.class, 1));
+        importes(facturaConReferencias, 1);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+    
+    @Benchmark
+    public String facturaCargada() throws IOException {
+        return JsonUtil.toJson(facturaCargada);
+    }
+    
+    @Benchmark
+    public String facturaConReferencias() throws IOException {
+        return JsonUtil.toJson(facturaConReferencias);
+    }
+    
+    @Benchmark
+    public String listaFacturas() throws IOException {
+        return JsonUtil.toJson(facturas);
+    }
+    
+    @Benchmark
+    public long listaFacturasStream() throws IOException {
+        return JsonUtil.writeJsonArray(OutputStream.nullOutputStream(), facturas.stream());
+    }
+    
+    private Factura facturaCargada(int i) {
+        Seccion seccion = new Seccion();
+        seccion.setSeccionId(i % 5 + 1);
+        seccion.setNombre("Sección " + seccion.getSeccionId());
+        
+        Producto producto = new Producto();
+        producto.setProductoId(i % 20 + 1);
+        producto.setNombre("Producto " + producto.getProductoId());
+        producto.setDescripcion("Descripción del producto " + producto.getProductoId());
+        producto.setPrecioBase(new BigDecimal("149.90"));
+        producto.setPlazasDisponibles(30);
+        producto.setSeccion(seccion);
+        
+        Comercial comercial = new Comercial();
+        comercial.setComercialId(i % 10 + 1);
+        comercial.setUsername("comercial" + comercial.getComercialId());
+        comercial.setNombre("Comercial " + comercial.getComercialId());
+        comercial.setEmail("comercial" + comercial.getComercialId() + "@crm.local");
+        comercial.setTelefono("600000000");
+        
+        Cliente cliente = new Cliente();
+        cliente.setClienteId(i + 1);
+        cliente.setUsername("cliente" + (i + 1));
+        cliente.setNombre("Cliente");
+        cliente.setApellidos("Número " + (i + 1));
+        cliente.setEdad(40);
+        cliente.setEmail("cliente" + (i + 1) + "@crm.local");
+        cliente.setTelefono("611111111");
+        cliente.setDireccion("Calle Mayor " + (i + 1));
+        cliente.setComercial(em.getReference(Comercial.class, comercial.getComercialId())); // LAZY, no entra en el JOIN FETCH
+        
+        Factura factura = new Factura();
+        factura.setFacturaId(String.format("F-2025-%06d", i));
+        factura.setCliente(cliente);
+        factura.setComercial(comercial);
+        factura.setProducto(producto);
+        importes(factura, i);
+        return factura;
+    }
+    
+    private static void importes(Factura factura, int i) {
+        factura.setFechaEmision(LocalDateTime.of(2025, 1, 1, 10, 0).plusMinutes(i));
+        factura.setEstado(i % 2 == 0 ? Factura.Estado.pagada : Factura.Estado.pendiente);
+        factura.setSubtotal(new BigDecimal("149.90"));
+        factura.setTotalIva(new BigDecimal("31.48"));
+        factura.setTotal(new BigDecimal("181.38"));
+        factura.setVersion(0);
+    }
+    
+    // arranca crmPU sin base de datos: solo hacen falta los metadatos para crear proxies
+    private static Map<String, Object> offlineProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jakarta.persistence.nonJtaDataSource", Proxy.newProxyInstance(
+            DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class },
+            (proxy, method, args) -> { throw new SQLException("Sin base de datos en el benchmark"); }));
+        properties.put("hibernate.temp.use_jdbc_metadata_defaults", "false");
+        properties.put("jakarta.persistence.database-product-name", "MySQL");
+        properties.put("jakarta.persistence.database-major-version", "8");
+        properties.put("hibernate.hbm2ddl.auto", "none");
+        properties.put("hibernate.show_sql", "false");
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+        properties.put("hibernate.generate_statistics", "false");
+        return properties;
+    }
+}
@@ -1,71 +1,634 @@
 package org.david.crm.concurrent;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import org.david.crm.concurrent.stats.ApiStatistics;
+import org.david.crm.config.AppConfig;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
 
 @ApplicationScoped
-public class AsyncLogService { // logging asincrono con executor service
+public class AsyncLogService { // logging asincrono: los hilos de las peticiones encolan y un unico hilo escribe el fichero
+    
+    // antes cada mensaje era una tarea de un pool de 3 hilos que abria application.log, escribia, hacia flush y lo cerraba
+    // dentro de un synchronized: los 3 hilos se turnaban en el monitor. Ahora la peticion solo deja el mensaje en un anillo
+    // acotado (nunca espera al disco) y el hilo escritor lo vuelca a un canal abierto todo el tiempo, con flush por lotes.
+    // Los criticos (antes un hilo nuevo por mensaje) van por un segundo anillo que el escritor atiende primero.
+    // El fichero rota por tamaño y por dia y los segmentos viejos se comprimen y se borran aparte (RollingLogFile).
+    // Ademas del texto libre hay eventos estructurados (LogEvent): la peticion solo copia referencias y numeros al hueco
+    // de la cola y el escritor los codifica como JSON lines; con el nivel desactivado no se hace nada
     
     @Inject
     private ApiStatistics apiStatistics;
     
-    private final ExecutorService logExecutor = Executors.newFixedThreadPool(3);
-    private final String logFile = "application.log";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter ISO_SECOND = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    
+    // json: una linea JSON por entrada ({"ts":..., "level":..., "event"/"msg":..., campos}); text: el formato de siempre
+    private final boolean json = !"text".equalsIgnoreCase(AppConfig.get("log.format", "json"));
+    private volatile Level minLevel = Level.fromConfig(AppConfig.get("log.level", "INFO"));
+    private final ThreadLocal<LogEvent> events = ThreadLocal.withInitial(() -> new LogEvent(this));
+    
+    private volatile RollingLogFile file; // se crea en start(): el proxy de CDI tambien ejecuta los inicializadores
+    private final LogRingBuffer queue = new LogRingBuffer(AppConfig.getInt("log.queue.capacity", 65536));
+    // group commit: flush cada flushBatch mensajes o cuando el primero sin volcar lleva flushIntervalMs esperando
+    private final int flushBatch = Math.max(1, AppConfig.getInt("log.flush.batch", 256));
+    private final long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, AppConfig.getLong("log.flush.intervalMs", 200)));
+    
+    // que hacer con la cola llena: DROP_NEWEST descarta el mensaje nuevo, DROP_OLDEST el mas antiguo de la cola
+    // y BLOCK hace esperar a la peticion hasta blockTimeoutMs y si sigue llena lo descarta
+    private final OverflowPolicy overflowPolicy = OverflowPolicy.fromConfig(AppConfig.get("log.overflow.policy", "DROP_NEWEST"));
+    private final long blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, AppConfig.getLong("log.overflow.blockTimeoutMs", 50)));
+    
+    // carril critico: cola propia que el escritor atiende antes que la normal, sin saltarse lo que ya estaba encolado antes.
+    // Con fsync cada lote critico se fuerza a disco (FileChannel.force) antes de darlo por escrito
+    private final LogRingBuffer criticalQueue = new LogRingBuffer(AppConfig.getInt("log.critical.capacity", 4096));
+    private final boolean criticalFsync = AppConfig.getBoolean("log.critical.fsync", false);
+    private final long syncTimeoutMs = AppConfig.getLong("log.critical.syncTimeoutMs", 2000);
+    // un mismo error critico se escribe como mucho maxRepeats veces por ventana; el resto se cuenta y se resume en el siguiente
+    private final int maxRepeats = Math.max(1, AppConfig.getInt("log.critical.maxRepeats", 10));
+    private final long repeatWindowMs = AppConfig.getLong("log.critical.repeatWindowMs", 60_000);
+    private static final int MAX_TRACKED_ERRORS = 1024; // mensajes distintos vigilados; al llenarse se empieza de cero
+    private final Map<String, Repeats> repeats = new ConcurrentHashMap<>();
+    private final LongAdder suppressedCritical = new LongAdder();
+    private volatile long criticalDurable; // entradas criticas ya escritas (y con fsync si esta activo)
+    private final Object durableLock = new Object();
+    
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder blockedWaits = new LongAdder(); // veces que una peticion tuvo que esperar sitio (BLOCK)
+    private volatile long logCount; // solo lo escribe el hilo escritor
+    
+    private volatile Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean writerParked;
+    
+    
+    @PostConstruct
+    void start() {
+        file = RollingLogFile.fromConfig();
+        running = true;
+        writerThread = new Thread(new LogWriter(), "LogWriterThread");
+        writerThread.setDaemon(true); // el cierre ordenado lo hace shutdown(); no debe impedir que la JVM termine
+        writerThread.start();
+        if (apiStatistics != null) {
+            apiStatistics.registerLogQueue(queue::size, queue.getCapacity());
+        }
+        System.out.println("[AsyncLogService] Escritor de logs iniciado en " + file.getActiveFile().toAbsolutePath()
+            + " (cola de " + queue.getCapacity() + " mensajes, " + overflowPolicy + ")");
+    }
+    
+    
+    public void logAsync(String message) { // log normal: se encola y se vuelve enseguida
+        if (minLevel.compareTo(Level.INFO) <= 0) {
+            enqueue(Level.INFO, message, null);
+        }
+    }
+    
+    
+    public void logCriticoAsync(String message) { // log critico por el carril prioritario, sin un hilo nuevo por mensaje
+        enqueueCritical(message, null);
+    }
     
     
-    private final AtomicInteger logCount = new AtomicInteger(0);
+    public boolean isEnabled(Level level) {
+        return level.compareTo(minLevel) >= 0;
+    }
     
+    public void setLevel(Level level) { // cambia el nivel minimo en caliente
+        minLevel = level;
+    }
+    
+    public Level getLevel() {
+        return minLevel;
+    }
+    
+    // evento estructurado: los ERROR van por el carril critico (con el limite de repeticiones por tipo)
+    public LogEvent event(Level level, String type) {
+        if (!isEnabled(level)) {
+            return LogEvent.DISABLED;
+        }
+        LogEvent event = events.get();
+        if (event.type != null) { // el del hilo esta a medias (evento dentro de otro o uno que no llego a log()): se usa otro
+            event = new LogEvent(this);
+            events.set(event);
+        }
+        return event.begin(level, type);
+    }
     
-    public void logAsync(String message) { // log normal con executor service y actualiza las estadisticas
-        logExecutor.submit(() -> {
-            writeLog(message);
-            apiStatistics.incrementLogsWritten();
-        });
+    public LogEvent debug(String type) {
+        return event(Level.DEBUG, type);
     }
     
- 
-    public void logCriticoAsync(String message) { // log critico con hilo creado con clase anónima y actualiza las estadisticas
-        Thread criticalThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                writeLog("[CRITICO] " + message);
-                System.out.println("Log crítico escrito: " + message);
+    public LogEvent info(String type) {
+        return event(Level.INFO, type);
+    }
+    
+    public LogEvent warn(String type) {
+        return event(Level.WARN, type);
+    }
+    
+    public LogEvent error(String type) {
+        return event(Level.ERROR, type);
+    }
+    
+    void submit(LogEvent event) { // desde LogEvent.log()
+        if (event.level == Level.ERROR) {
+            enqueueCritical(null, event);
+        } else {
+            enqueue(event.level, null, event);
+        }
+    }
+    
+    // como logCriticoAsync pero espera a que la linea este escrita (y en disco si log.critical.fsync) hasta syncTimeoutMs.
+    // false si no dio tiempo, si se descarto o si se suprimio por repetido
+    public boolean logCriticoSync(String message) {
+        long pos = enqueueCritical(message, null);
+        if (pos < 0) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + syncTimeoutMs;
+        synchronized (durableLock) {
+            while (criticalDurable <= pos) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    durableLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
             }
-        }, "CriticalLogThread");
-        criticalThread.setDaemon(false);
-        criticalThread.start();
+        }
+        return true;
+    }
+    
+    // texto libre o evento; posicion en el carril critico, -1 si se suprime o no cabe
+    private long enqueueCritical(String message, LogEvent event) {
+        long time = System.currentTimeMillis();
+        // se cuentan como repetidos los textos iguales y los eventos del mismo tipo con los mismos valores
+        int suppressedBefore = admitRepeat(event != null ? repeatKey(event) : message, time);
+        if (suppressedBefore < 0) {
+            return -1;
+        }
+        if (suppressedBefore > 0) {
+            if (event != null) {
+                event.with("suprimidas", suppressedBefore);
+            } else {
+                message = message + " (" + suppressedBefore + " repeticiones suprimidas en la ventana anterior)";
+            }
+        }
+        // barrera: todo lo encolado hasta ahora en la cola normal se escribe antes que este mensaje
+        long pos = criticalQueue.offer(time, Level.ERROR, message, event, queue.tailPosition());
+        if (pos < 0) {
+            dropped();
+            System.err.println("[AsyncLogService] Carril critico lleno, descartado: " + (event != null ? event.type : message));
+            return -1;
+        }
+        wakeWriter();
+        return pos;
     }
     
-    synchronized void writeLog(String message) { // escribe el log en el archivo
-        try (FileWriter writer = new FileWriter(logFile, true)) {
-            String logEntry = String.format("[%s] %s\n",
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
-                message);
-            writer.write(logEntry);
-            writer.flush();
-            logCount.incrementAndGet();
-        } catch (IOException e) {
-            System.err.println("Error al escribir log: " + e.getMessage());
+    private static String repeatKey(LogEvent event) { // solo para ERROR: aqui reservar memoria no importa
+        StringBuilder key = new StringBuilder(event.type);
+        for (int i = 0; i < event.count; i++) {
+            key.append('|').append(event.kinds[i] == LogEvent.STRING ? event.strings[i] : String.valueOf(event.longs[i]));
         }
+        return key.toString();
+    }
+    
+    // -1 si el mensaje supera maxRepeats en su ventana; si no, las repeticiones suprimidas en la ventana anterior
+    private int admitRepeat(String key, long now) {
+        Repeats entry = repeats.get(key);
+        if (entry == null) {
+            if (repeats.size() >= MAX_TRACKED_ERRORS) {
+                repeats.clear();
+            }
+            entry = repeats.computeIfAbsent(key, m -> new Repeats(now));
+        }
+        return entry.admit(now);
+    }
+    
+    private void enqueue(Level level, String message, LogEvent event) {
+        long time = System.currentTimeMillis();
+        if (queue.offer(time, level, message, event, 0) < 0 && !offerFull(time, level, message, event)) {
+            dropped(); // cola llena (disco atascado): se pierde el mensaje antes que tumbar el nodo
+            return;
+        }
+        wakeWriter();
+    }
+    
+    // la cola estaba llena: se aplica la politica; false si el mensaje se descarta
+    private boolean offerFull(long time, Level level, String message, LogEvent event) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                do {
+                    if (queue.discardOldest()) {
+                        dropped();
+                    }
+                } while (queue.offer(time, level, message, event, 0) < 0);
+                return true;
+            case BLOCK:
+                blockedWaits.increment();
+                long deadline = System.nanoTime() + blockTimeoutNanos;
+                long backoff = 10_000; // 10 µs, se duplica hasta 1 ms
+                do {
+                    wakeWriter();
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(Math.min(backoff, remaining));
+                    backoff = Math.min(backoff * 2, 1_000_000);
+                } while (queue.offer(time, level, message, event, 0) < 0);
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private void dropped() {
+        droppedMessages.increment();
+        if (apiStatistics != null) {
+            apiStatistics.incrementLogsDropped();
+        }
+    }
+    
+    private void wakeWriter() {
+        if (writerParked) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+    
+    public long getLogCount() {
+        return logCount;
+    }
+    
+    public int getQueueDepth() { // logs pendientes de escribir
+        return queue.size();
+    }
+    
+    public long getDroppedMessages() {
+        return droppedMessages.sum();
+    }
+    
+    public long getBlockedWaits() {
+        return blockedWaits.sum();
     }
     
-    public int getLogCount() {
-        return logCount.get();
+    public long getSuppressedCritical() {
+        return suppressedCritical.sum();
     }
     
-    public void shutdown() {
-        logExecutor.shutdown();
+    public int getCriticalQueueDepth() {
+        return criticalQueue.size();
+    }
+    
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    public long getLogRolls() { // rotaciones del fichero desde el arranque
+        RollingLogFile current = file;
+        return current != null ? current.getRolls() : 0;
+    }
+    
+    public int getArchivedSegments() {
+        RollingLogFile current = file;
+        return current != null ? current.getArchivedSegments() : 0;
+    }
+    
+    public long getArchivedBytes() { // disco ocupado por los segmentos rotados
+        RollingLogFile current = file;
+        return current != null ? current.getArchivedBytes() : 0;
+    }
+    
+    @PreDestroy
+    public void shutdown() { // vacia la cola, hace el ultimo flush, cierra el fichero y espera al archivado pendiente
+        Thread writer = writerThread;
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+    }
+    
+    
+    // el unico hilo que toca el fichero activo
+    private class LogWriter implements Runnable, LogRingBuffer.Sink {
+        
+        private FileChannel channel;
+        private Writer out;
+        private int pending; // escritos desde el ultimo flush
+        private long firstPendingNanos;
+        // la marca de tiempo solo se formatea cuando cambia el segundo
+        private long cachedSecond = Long.MIN_VALUE;
+        private String cachedTimestamp;
+        private String cachedIsoSecond; // 2024-05-01T10:15:30 para el formato json, mas los milisegundos y la zona
+        private String cachedOffset;
+        // la linea se compone aqui y se copia al Writer sin pasar por un String
+        private final StringBuilder line = new StringBuilder(256);
+        private char[] chars = new char[256];
+        
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty() || !criticalQueue.isEmpty()) {
+                try {
+                    if (out == null) {
+                        open();
+                    }
+                    int critical = drainCritical();
+                    int drained = critical + queue.drainTo(this, flushBatch);
+                    if (critical > 0) { // lo critico no espera al group commit
+                        flush();
+                        if (criticalFsync) {
+                            channel.force(false);
+                        }
+                        publishDurable();
+                    } else if (pending >= flushBatch || (pending > 0 && System.nanoTime() - firstPendingNanos >= flushIntervalNanos)) {
+                        flush();
+                    }
+                    if (drained == 0) {
+                        waitForMessages();
+                    }
+                } catch (IOException e) {
+                    System.err.println("[AsyncLogService] Error al escribir log: " + e.getMessage());
+                    close();
+                    LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1)); // se reintenta abrir; mientras tanto la cola se llena y descarta
+                }
+            }
+            try {
+                if (out != null) {
+                    flush();
+                }
+            } catch (IOException e) {
+                System.err.println("[AsyncLogService] Error al escribir log: " + e.getMessage());
+            }
+            close();
+        }
+        
+        // entradas criticas primero, pero cada una despues de las normales que se encolaron antes que ella
+        private int drainCritical() throws IOException {
+            int written = 0;
+            long barrier;
+            while (written < flushBatch && (barrier = criticalQueue.peekMark()) >= 0) {
+                while (queue.headPosition() < barrier) {
+                    if (queue.drainTo(this, 1) == 0) {
+                        Thread.yield(); // un productor ha reservado el hueco y aun no ha publicado
+                    }
+                }
+                written += criticalQueue.drainTo(this, 1);
+            }
+            return written;
+        }
+        
+        private void publishDurable() {
+            synchronized (durableLock) {
+                criticalDurable = criticalQueue.headPosition();
+                durableLock.notifyAll();
+            }
+        }
+        
+        @Override
+        public void accept(LogRingBuffer.Entry entry) throws IOException {
+            long timeMillis = entry.time();
+            if (file.crossesDay(timeMillis)) { // cada segmento es de un solo dia
+                roll();
+            }
+            line.setLength(0);
+            if (json) {
+                encodeJson(entry);
+            } else {
+                encodeText(entry);
+            }
+            line.append('\n');
+            int length = line.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            line.getChars(0, length, chars, 0);
+            out.write(chars, 0, length);
+            file.written(timeMillis);
+            if (pending++ == 0) {
+                firstPendingNanos = System.nanoTime();
+            }
+        }
+        
+        // {"ts":"2024-05-01T10:15:30.123+02:00","level":"INFO","event":"cliente.recuperado","id":5,"nombre":"Ana"}
+        // o con "msg" en vez de "event" para el texto libre
+        private void encodeJson(LogRingBuffer.Entry entry) {
+            long timeMillis = entry.time();
+            updateTimestamp(timeMillis);
+            int millis = (int) Math.floorMod(timeMillis, 1000L);
+            line.append("{\"ts\":\"").append(cachedIsoSecond).append('.')
+                .append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10))
+                .append(cachedOffset).append("\",\"level\":\"").append(entry.level().name())
+                .append(entry.isEvent() ? "\",\"event\":" : "\",\"msg\":");
+            appendJsonString(entry.message());
+            for (int f = 0; f < entry.fieldCount(); f++) {
+                line.append(',');
+                appendJsonString(entry.key(f));
+                line.append(':');
+                switch (entry.kind(f)) {
+                    case LogEvent.LONG: line.append(entry.longValue(f)); break;
+                    case LogEvent.BOOLEAN: line.append(entry.longValue(f) != 0); break;
+                    default: appendJsonString(entry.stringValue(f));
+                }
+            }
+            line.append('}');
+        }
+        
+        private void appendJsonString(String value) {
+            if (value == null) {
+                line.append("null");
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': line.append("\\\""); break;
+                    case '\\': line.append("\\\\"); break;
+                    case '\n': line.append("\\n"); break;
+                    case '\r': line.append("\\r"); break;
+                    case '\t': line.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            line.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                        } else {
+                            line.append(c);
+                        }
+                }
+            }
+            line.append('"');
+        }
+        
+        // [2024-05-01 10:15:30] [CRITICO] cliente.recuperado id=5 nombre=Ana
+        private void encodeText(LogRingBuffer.Entry entry) {
+            updateTimestamp(entry.time());
+            line.append('[').append(cachedTimestamp).append("] ");
+            if (entry.level() == Level.ERROR) {
+                line.append("[CRITICO] ");
+            }
+            line.append(entry.message());
+            for (int f = 0; f < entry.fieldCount(); f++) {
+                line.append(' ').append(entry.key(f)).append('=');
+                switch (entry.kind(f)) {
+                    case LogEvent.LONG: line.append(entry.longValue(f)); break;
+                    case LogEvent.BOOLEAN: line.append(entry.longValue(f) != 0); break;
+                    default: line.append(entry.stringValue(f));
+                }
+            }
+        }
+        
+        // duerme hasta que llegue un mensaje o toque el flush por tiempo de lo que ya esta escrito
+        private void waitForMessages() {
+            writerParked = true;
+            if (queue.isEmpty() && criticalQueue.isEmpty() && running) { // se comprueba otra vez despues de avisar: un productor que publico antes ya no hara unpark
+                long wait = pending > 0 ? flushIntervalNanos - (System.nanoTime() - firstPendingNanos) : TimeUnit.SECONDS.toNanos(1);
+                LockSupport.parkNanos(Math.max(1, wait));
+            }
+            writerParked = false;
+        }
+        
+        private void updateTimestamp(long timeMillis) {
+            long second = Math.floorDiv(timeMillis, 1000L);
+            if (second != cachedSecond) {
+                Instant instant = Instant.ofEpochMilli(timeMillis);
+                ZoneId zone = ZoneId.systemDefault();
+                LocalDateTime local = LocalDateTime.ofInstant(instant, zone);
+                ZoneOffset offset = zone.getRules().getOffset(instant);
+                cachedTimestamp = local.format(TIMESTAMP);
+                cachedIsoSecond = local.format(ISO_SECOND);
+                cachedOffset = offset.getId();
+                cachedSecond = second;
+            }
+        }
+        
+        private void open() throws IOException {
+            channel = file.open();
+            out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 64 * 1024);
+        }
+        
+        private void flush() throws IOException {
+            writeOut();
+            if (file.isFull()) {
+                roll();
+            }
+        }
+        
+        private void writeOut() throws IOException {
+            out.flush();
+            logCount += pending;
+            if (apiStatistics != null) { // null fuera de CDI (benchmarks)
+                apiStatistics.addLogsWritten(pending);
+            }
+            pending = 0;
+        }
+        
+        // cierra el segmento activo, lo pasa al archivador y sigue en un fichero nuevo
+        private void roll() throws IOException {
+            writeOut();
+            close();
+            file.roll();
+            open();
+        }
+        
+        private void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.err.println("[AsyncLogService] Error al cerrar " + file.getActiveFile() + ": " + e.getMessage());
+            }
+            out = null;
+            channel = null;
+            pending = 0;
+        }
+    }
+    
+    
+    private class Repeats { // apariciones de un mismo mensaje critico en la ventana actual
+        private long windowStart;
+        private int count;
+        private int suppressed;
+        
+        Repeats(long now) {
+            this.windowStart = now;
+        }
+        
+        synchronized int admit(long now) {
+            int suppressedBefore = 0;
+            if (now - windowStart >= repeatWindowMs) {
+                suppressedBefore = suppressed;
+                windowStart = now;
+                count = 0;
+                suppressed = 0;
+            }
+            if (++count > maxRepeats) {
+                suppressed++;
+                suppressedCritical.increment();
+                return -1;
+            }
+            return suppressedBefore;
+        }
+    }
+    
+    
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR;
+        
+        static final Level[] VALUES = values();
+        
+        static Level fromConfig(String value) {
+            try {
+                return valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("[AsyncLogService] log.level desconocido: " + value + ", se usa INFO");
+                return INFO;
+            }
+        }
+    }
+    
+    
+    public enum OverflowPolicy {
+        DROP_NEWEST, DROP_OLDEST, BLOCK;
+        
+        static OverflowPolicy fromConfig(String value) {
+            try {
+                return valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("[AsyncLogService] log.overflow.policy desconocida: " + value + ", se usa DROP_NEWEST");
+                return DROP_NEWEST;
+            }
+        }
     }
 }
-
@@ -1,30 +1,40 @@
 package org.david.crm.concurrent;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import org.david.crm.concurrent.threads.ClienteReportThread;
-import org.david.crm.model.Cliente;
-import org.david.crm.model.Factura;
+import org.david.crm.config.AppConfig;
 import org.david.crm.repository.ClienteRepository;
 import org.david.crm.repository.ComercialRepository;
 import org.david.crm.repository.FacturaRepository;
 import org.david.crm.config.EntityManagerProducer;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
@@ -76,11 +86,38 @@ public class AsyncReportService {
     @Inject
     private FacturaRepository facturaRepository;
     
+    @Inject
+    private AsyncLogService logService;
+    
+    
+    // los informes casi solo esperan a la base de datos y al disco. report.executor=virtual: un hilo virtual por informe
+    // y un semaforo de report.maxConcurrent (por defecto la mitad del pool JDBC, para que las peticiones sigan teniendo
+    // conexiones) en vez del tope de hilos; platform: el pool fijo de report.pool.size hilos de siempre
+    private final boolean virtualThreads = "virtual".equalsIgnoreCase(AppConfig.get("report.executor", "platform"));
+    private final ExecutorService executorService = virtualThreads
+        ? new VirtualThreadExecutor("informe-", AppConfig.getInt("report.maxConcurrent", Math.max(1, AppConfig.getInt("db.pool.maxSize", 20) / 2)))
+        : Executors.newFixedThreadPool(AppConfig.getInt("report.pool.size", 5));
     
-    private final ExecutorService executorService = Executors.newFixedThreadPool(5);
+    // ScheduledExecutorService para tareas periódicas limpieza de informes antiguos (una vez al dia: basta un hilo)
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
     
-    // ScheduledExecutorService para tareas periódicas limpieza de informes antiguos
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private PinnedThreadMonitor pinnedMonitor; // solo con hilos virtuales
+    
+    // informes lanzados desde /api/informes por id. Los terminados se olvidan report.jobs.ttlMinutes despues de acabar
+    // y nunca hay mas de report.jobs.max (se van primero los terminados mas antiguos); los que siguen en marcha no se tocan
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final long jobsTtlMillis = TimeUnit.MINUTES.toMillis(AppConfig.getLong("report.jobs.ttlMinutes", 60));
+    private final int jobsMax = AppConfig.getInt("report.jobs.max", 1000);
+    
+    // single-flight: el ultimo job de cada informe (los informes no tienen parametros, la clave es el tipo). Mientras esta
+    // en marcha los que piden el mismo informe reciben ese job y esperan su futuro en vez de lanzar otra vez las consultas;
+    // ya terminado bien, se sigue sirviendo durante report.freshness.seconds. Asi la carga en MySQL no depende de
+    // cuantos usuarios pulsen el boton a la vez
+    private final Map<String, ReportJob> ultimos = new ConcurrentHashMap<>();
+    private final long freshnessMillis = TimeUnit.SECONDS.toMillis(AppConfig.getLong("report.freshness.seconds", 30));
+    private final LongAdder informesLanzados = new LongAdder();
+    private final LongAdder informesCompartidos = new LongAdder(); // se unieron a uno en marcha
+    private final LongAdder informesRecientes = new LongAdder(); // se sirvio uno terminado dentro de la ventana
     
     public AsyncReportService() {
         System.out.println("[AsyncReportService] Constructor llamado - Inicializando servicio de informes...");
@@ -91,8 +128,26 @@ public class AsyncReportService {
         System.out.println("[AsyncReportService] Servicio inicializado correctamente");
     }
     
+    @PostConstruct
+    void init() {
+        scheduler.scheduleWithFixedDelay(this::purgarJobs, 1, 1, TimeUnit.MINUTES);
+        if (virtualThreads) {
+            System.out.println("[AsyncReportService] Informes en hilos virtuales, maximo "
+                + ((VirtualThreadExecutor) executorService).getMaxConcurrent() + " a la vez");
+            if (AppConfig.getBoolean("report.pinnedMonitor.enabled", true)) {
+                try {
+                    pinnedMonitor = new PinnedThreadMonitor(AppConfig.getLong("report.pinnedMonitor.thresholdMs", 20), logService);
+                    pinnedMonitor.start();
+                } catch (RuntimeException e) { // JFR no disponible en esta JVM
+                    System.err.println("[AsyncReportService] No se pudo vigilar el pinning de hilos virtuales: " + e.getMessage());
+                    pinnedMonitor = null;
+                }
+            }
+        }
+    }
+    
     // Elimina informes con más de 7 días de antigüedad.
-
+    
     private void limpiarInformesAntiguos() {
         try {
             Path directorioInformes = Paths.get(REPORTS_DIR);
@@ -125,54 +180,154 @@ public class AsyncReportService {
             System.err.println("Error al limpiar informes antiguos: " + e.getMessage());
         }
     }
-
-   
-    public Future<String> generarInformeClientes() {
+    
+    
+    // devuelve el job del informe (clientes, facturas o completo): el que ya esta en marcha, el terminado hace menos de
+    // report.freshness.seconds o uno nuevo. Se registra para poder consultarlo por id; null si el tipo no existe
+    public ReportJob lanzarInforme(String tipo) {
+        switch (tipo) {
+            case "clientes": case "facturas": case "completo":
+                break;
+            default:
+                return null;
+        }
+        
+        // compute bloquea la clave: dos peticiones a la vez no pueden lanzar el mismo informe dos veces
+        ReportJob job = ultimos.compute(tipo, (key, actual) -> reutilizable(actual) ? actual : nuevoJob(key));
+        jobs.putIfAbsent(job.getId(), job); // uno reciente que ya se purgo del registro vuelve a poder consultarse
+        return job;
+    }
+    
+    private boolean reutilizable(ReportJob actual) {
+        if (actual == null) {
+            return false;
+        }
+        if (!actual.isTerminado()) {
+            informesCompartidos.increment();
+            return true;
+        }
+        if ("done".equals(actual.getStatus()) && System.currentTimeMillis() - actual.getTerminado() < freshnessMillis) {
+            informesRecientes.increment();
+            return true;
+        }
+        return false; // fallido o ya viejo: se vuelve a generar
+    }
+    
+    // solo encola el informe (enExecutor), no espera a nada: se puede llamar dentro de compute
+    private ReportJob nuevoJob(String tipo) {
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), tipo);
+        CompletableFuture<String> future;
+        switch (tipo) {
+            case "clientes":
+                future = generarInformeClientes(job);
+                break;
+            case "facturas":
+                future = generarInformeFacturas(job);
+                break;
+            default:
+                future = generarInformeCompleto(job);
+        }
+        job.attach(future);
+        informesLanzados.increment();
+        return job;
+    }
+    
+    // como CompletableFuture.supplyAsync, pero la tarea es un FutureTask: si el executor la cancela sin ejecutarla
+    // (interrumpida mientras esperaba permiso del semaforo) el futuro termina con CancellationException. Con supplyAsync
+    // se quedaba sin completar y el single-flight seguia devolviendo ese job en "queued" para siempre
+    private <T> CompletableFuture<T> enExecutor(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executorService.execute(new FutureTask<Void>(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    future.completeExceptionally(new CancellationException("Informe cancelado antes de empezar"));
+                }
+            }
+        });
+        return future;
+    }
+    
+    public ReportJob getJob(String id) {
+        return jobs.get(id);
+    }
+    
+    public int getJobCount() {
+        return jobs.size();
+    }
+    
+    // cada minuto: fuera los terminados que pasaron el TTL y, si aun sobran, los terminados mas antiguos
+    private void purgarJobs() {
+        try {
+            long limite = System.currentTimeMillis() - jobsTtlMillis;
+            jobs.values().removeIf(job -> job.isTerminado() && job.getTerminado() < limite);
+            
+            int sobran = jobs.size() - jobsMax;
+            if (sobran > 0) {
+                jobs.values().stream()
+                    .filter(ReportJob::isTerminado)
+                    .sorted(Comparator.comparingLong(ReportJob::getTerminado))
+                    .limit(sobran)
+                    .forEach(job -> jobs.remove(job.getId()));
+            }
+        } catch (Exception e) {
+            System.err.println("[AsyncReportService] Error al purgar jobs de informes: " + e.getMessage());
+        }
+    }
+    
+    
+    // los informes terminan con excepcion si fallan (el job queda en failed), no con un texto de error como resultado
+    CompletableFuture<String> generarInformeClientes(ReportJob job) {
         System.out.println("[AsyncReportService] generarInformeClientes() llamado");
         
         if (clienteRepository == null) {
             System.err.println("[AsyncReportService] ERROR: clienteRepository es null!");
-            return executorService.submit(() -> "Error: Repositorio no disponible");
+            return CompletableFuture.failedFuture(new IllegalStateException("Repositorio no disponible"));
         }
         
-        return executorService.submit(() -> {
+        return enExecutor(() -> {
             EntityManager em = null;
             try {
+                job.started();
                 System.out.println("[AsyncReportService] Iniciando generación de informe de clientes en thread...");
                 
                 // Crear EntityManager para este thread
                 em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
                 EntityManagerProducer.setEntityManager(em);
+                EntityManagerProducer.configureReadOnly(em); // sin snapshots de dirty-checking para las filas leidas
                 EntityTransaction tx = em.getTransaction();
                 tx.begin();
                 
                 Thread.sleep(2000); // Simula mucho tiempo de procesamiento
-                System.out.println("[AsyncReportService] Obteniendo clientes de la base de datos...");
-                List<Cliente> clientes = clienteRepository.findAll();
-                System.out.println("[AsyncReportService] Se obtuvieron " + clientes.size() + " clientes");
-                
-                tx.commit();
+                long totalClientes = clienteRepository.count();
+                System.out.println("[AsyncReportService] Informe de " + totalClientes + " clientes");
                 
                 String filename = "informe_clientes_" + 
                     LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
                 String filepath = getReportPath(filename);
                 System.out.println("[AsyncReportService] Ruta del informe: " + filepath);
                 
-                try (FileWriter writer = new FileWriter(filepath)) {
-                    writer.write("=== INFORME DE CLIENTES ===\n");
-                    writer.write("Fecha: " + LocalDateTime.now() + "\n\n");
-                    writer.write("Total de clientes: " + clientes.size() + "\n\n");
+                // las filas se leen del cursor de 500 en 500 y se escriben segun llegan, en la misma transaccion que el count
+                try (ReportWriter writer = new ReportWriter(filepath)) {
+                    writer.append("=== INFORME DE CLIENTES ===").newLine();
+                    writer.append("Fecha: ").append(LocalDateTime.now()).newLine().newLine();
+                    writer.append("Total de clientes: ").append(totalClientes).newLine().newLine();
                     
-                    for (Cliente cliente : clientes) {
-                        writer.write(String.format("ID: %d | Username: %s | Nombre: %s %s | Email: %s\n",
-                            cliente.getClienteId(),
-                            cliente.getUsername(),
-                            cliente.getNombre(),
-                            cliente.getApellidos(),
-                            cliente.getEmail()));
-                    }
+                    writer.writeRows(em, clienteRepository.streamAll(), (out, cliente) -> out
+                        .append("ID: ").append(cliente.getClienteId())
+                        .append(" | Username: ").append(cliente.getUsername())
+                        .append(" | Nombre: ").append(cliente.getNombre()).append(' ').append(cliente.getApellidos())
+                        .append(" | Email: ").append(cliente.getEmail()), job::addFilas);
                 }
+                tx.commit();
                 
+                job.setRuta(filepath); // solo con el fichero completo: un job fallido no da una ruta a medias
                 System.out.println("[AsyncReportService] ✓ Informe de clientes generado exitosamente: " + filepath);
                 return "Informe generado: " + filepath;
             } catch (InterruptedException e) {
@@ -182,21 +337,21 @@ public class AsyncReportService {
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error: Informe interrumpido";
+                throw new IllegalStateException("Informe interrumpido", e);
             } catch (IOException e) {
                 System.err.println("[AsyncReportService] ✗ Error de IO al generar informe: " + e.getMessage());
                 e.printStackTrace();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error al generar informe: " + e.getMessage();
+                throw new UncheckedIOException("Error al generar informe: " + e.getMessage(), e);
             } catch (Exception e) {
                 System.err.println("[AsyncReportService] ✗ Error inesperado al generar informe: " + e.getMessage());
                 e.printStackTrace();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error inesperado: " + e.getMessage();
+                throw new IllegalStateException("Error inesperado: " + e.getMessage(), e);
             } finally {
                 // Limpiar EntityManager del thread
                 if (em != null) {
@@ -206,50 +361,57 @@ public class AsyncReportService {
         });
     }
     
-
-    // CompletableFuture.supplyAsync()
-    public CompletableFuture<String> generarInformeFacturas() { // va a corres en paralelo tres tareas diferentes y espera a que todas se completen
+    
+    CompletableFuture<String> generarInformeFacturas(ReportJob job) { // va a corres en paralelo tres tareas diferentes y espera a que todas se completen
         System.out.println("[AsyncReportService] generarInformeFacturas() llamado");
         
         if (facturaRepository == null) {
             System.err.println("[AsyncReportService] ERROR: facturaRepository es null!");
-            return CompletableFuture.completedFuture("Error: Repositorio no disponible");
+            return CompletableFuture.failedFuture(new IllegalStateException("Repositorio no disponible"));
         }
         
-        return CompletableFuture.supplyAsync(() -> {
+        return enExecutor(() -> {
             EntityManager em = null;
             try {
+                job.started();
                 System.out.println("[AsyncReportService] Iniciando generación de informe de facturas en thread...");
                 
                 // Crear EntityManager para este thread
                 em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
                 EntityManagerProducer.setEntityManager(em);
+                EntityManagerProducer.configureReadOnly(em);
                 EntityTransaction tx = em.getTransaction();
                 tx.begin();
                 
                 Thread.sleep(1500);
-                System.out.println("[AsyncReportService] Obteniendo facturas de la base de datos...");
-                List<Factura> facturas = facturaRepository.findAll();
-                System.out.println("[AsyncReportService] Se obtuvieron " + facturas.size() + " facturas");
-                
-                tx.commit();
-                
-                double totalFacturado = facturas.stream()
-                    .mapToDouble(f -> f.getTotal() != null ? f.getTotal().doubleValue() : 0.0)
-                    .sum();
+                // el total y la suma los calcula MySQL; el detalle se lee despues con el cursor
+                long totalFacturas = facturaRepository.count();
+                BigDecimal totalFacturado = facturaRepository.sumTotal();
+                System.out.println("[AsyncReportService] Informe de " + totalFacturas + " facturas");
                 
                 String filename = "informe_facturas_" + 
                     LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
                 String filepath = getReportPath(filename);
                 System.out.println("[AsyncReportService] Ruta del informe: " + filepath);
                 
-                try (FileWriter writer = new FileWriter(filepath)) {
-                    writer.write("=== INFORME DE FACTURAS ===\n");
-                    writer.write("Fecha: " + LocalDateTime.now() + "\n\n");
-                    writer.write("Total de facturas: " + facturas.size() + "\n");
-                    writer.write("Total facturado: " + totalFacturado + " €\n\n");
+                try (ReportWriter writer = new ReportWriter(filepath)) {
+                    writer.append("=== INFORME DE FACTURAS ===").newLine();
+                    writer.append("Fecha: ").append(LocalDateTime.now()).newLine().newLine();
+                    writer.append("Total de facturas: ").append(totalFacturas).newLine();
+                    writer.append("Total facturado: ").append(totalFacturado.toPlainString()).append(" €").newLine().newLine();
+                    
+                    // cliente y producto vienen en la misma fila (JOIN FETCH): no hay una consulta por factura
+                    writer.writeRows(em, facturaRepository.streamAll(), (out, factura) -> out
+                        .append("ID: ").append(factura.getFacturaId())
+                        .append(" | Fecha: ").append(factura.getFechaEmision())
+                        .append(" | Cliente: ").append(factura.getCliente().getClienteId())
+                        .append(" | Producto: ").append(factura.getProducto().getNombre())
+                        .append(" | Estado: ").append(factura.getEstado())
+                        .append(" | Total: ").append(factura.getTotal()), job::addFilas);
                 }
+                tx.commit();
                 
+                job.setRuta(filepath); // solo con el fichero completo: un job fallido no da una ruta a medias
                 System.out.println("[AsyncReportService] ✓ Informe de facturas generado exitosamente: " + filepath);
                 return "Informe de facturas generado: " + filepath;
             } catch (InterruptedException e) {
@@ -259,122 +421,132 @@ public class AsyncReportService {
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error: Informe interrumpido";
+                throw new IllegalStateException("Informe interrumpido", e);
             } catch (IOException e) {
                 System.err.println("[AsyncReportService] ✗ Error de IO al generar informe: " + e.getMessage());
                 e.printStackTrace();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error al generar informe: " + e.getMessage();
+                throw new UncheckedIOException("Error al generar informe: " + e.getMessage(), e);
             } catch (Exception e) {
                 System.err.println("[AsyncReportService] ✗ Error inesperado al generar informe: " + e.getMessage());
                 e.printStackTrace();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error inesperado: " + e.getMessage();
+                throw new IllegalStateException("Error inesperado: " + e.getMessage(), e);
             } finally {
                 // Limpiar EntityManager del thread
                 if (em != null) {
                     EntityManagerProducer.removeEntityManager();
                 }
             }
-        }, executorService);
+        });
     }
     
-
-    public CompletableFuture<String> generarInformeCompleto() {
-        CompletableFuture<String> informeClientes = CompletableFuture.supplyAsync(() -> { // informe de clientes con complatable future
+    
+    CompletableFuture<String> generarInformeCompleto(ReportJob job) {
+        CompletableFuture<String> informeClientes = enExecutor(() -> { // informe de clientes con complatable future
             EntityManager em = null;
             try {
+                job.started();
                 em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
                 EntityManagerProducer.setEntityManager(em);
                 EntityTransaction tx = em.getTransaction();
                 tx.begin();
                 
                 Thread.sleep(1000);
-                int count = clienteRepository.findAll().size();
+                long count = clienteRepository.count();
                 tx.commit();
+                job.addFilas(count);
                 return "Clientes procesados: " + count;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error";
+                throw new IllegalStateException("Informe interrumpido", e);
             } catch (Exception e) {
+                System.err.println("[AsyncReportService] ✗ Error en una parte del informe completo: " + e.getMessage());
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error: " + e.getMessage();
+                throw new IllegalStateException("Error inesperado: " + e.getMessage(), e);
             } finally {
                 if (em != null) {
                     EntityManagerProducer.removeEntityManager();
                 }
             }
-        }, executorService);
+        });
         
-        CompletableFuture<String> informeComerciales = CompletableFuture.supplyAsync(() -> { // informe de comerciales con complatable future
+        CompletableFuture<String> informeComerciales = enExecutor(() -> { // informe de comerciales con complatable future
             EntityManager em = null;
             try {
+                job.started();
                 em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
                 EntityManagerProducer.setEntityManager(em);
                 EntityTransaction tx = em.getTransaction();
                 tx.begin();
                 
                 Thread.sleep(1000);
-                int count = comercialRepository.findAll().size();
+                long count = comercialRepository.count();
                 tx.commit();
+                job.addFilas(count);
                 return "Comerciales procesados: " + count;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error";
+                throw new IllegalStateException("Informe interrumpido", e);
             } catch (Exception e) {
+                System.err.println("[AsyncReportService] ✗ Error en una parte del informe completo: " + e.getMessage());
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error: " + e.getMessage();
+                throw new IllegalStateException("Error inesperado: " + e.getMessage(), e);
             } finally {
                 if (em != null) {
                     EntityManagerProducer.removeEntityManager();
                 }
             }
-        }, executorService);
+        });
         
-        CompletableFuture<String> informeFacturas = CompletableFuture.supplyAsync(() -> { // ubfirne de factyras con complatable future
+        CompletableFuture<String> informeFacturas = enExecutor(() -> { // ubfirne de factyras con complatable future
             EntityManager em = null;
             try {
+                job.started();
                 em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
                 EntityManagerProducer.setEntityManager(em);
                 EntityTransaction tx = em.getTransaction();
                 tx.begin();
                 
                 Thread.sleep(1000);
-                int count = facturaRepository.findAll().size();
+                long count = facturaRepository.count();
                 tx.commit();
+                job.addFilas(count);
                 return "Facturas procesadas: " + count;
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error";
+                throw new IllegalStateException("Informe interrumpido", e);
             } catch (Exception e) {
+                System.err.println("[AsyncReportService] ✗ Error en una parte del informe completo: " + e.getMessage());
                 if (em != null && em.getTransaction().isActive()) {
                     em.getTransaction().rollback();
                 }
-                return "Error: " + e.getMessage();
+                throw new IllegalStateException("Error inesperado: " + e.getMessage(), e);
             } finally {
                 if (em != null) {
                     EntityManagerProducer.removeEntityManager();
                 }
             }
-        }, executorService);
+        });
         
+        // si una parte falla, allOf termina con su excepcion, thenApply no se ejecuta y el job queda en failed
         return CompletableFuture.allOf(informeClientes, informeComerciales, informeFacturas) // espera a que todos los informes se completen
             .thenApply(v -> {
                 try {
@@ -382,29 +554,30 @@ public class AsyncReportService {
                         LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
                     String filepath = getReportPath(filename);
                     
-                    try (FileWriter writer = new FileWriter(filepath)) {
-                        writer.write("=== INFORME COMPLETO ===\n");
-                        writer.write("Fecha: " + LocalDateTime.now() + "\n\n");
-                        writer.write(informeClientes.join() + "\n");
-                        writer.write(informeComerciales.join() + "\n");
-                        writer.write(informeFacturas.join() + "\n");
+                    try (ReportWriter writer = new ReportWriter(filepath)) {
+                        writer.append("=== INFORME COMPLETO ===").newLine();
+                        writer.append("Fecha: ").append(LocalDateTime.now()).newLine().newLine();
+                        writer.append(informeClientes.join()).newLine();
+                        writer.append(informeComerciales.join()).newLine();
+                        writer.append(informeFacturas.join()).newLine();
                     }
                     
+                    job.setRuta(filepath);
                     System.out.println("[AsyncReportService] ✓ Informe completo generado exitosamente: " + filepath);
                     return "Informe completo generado: " + filepath;
                 } catch (IOException e) {
                     System.err.println("[AsyncReportService] ✗ Error de IO al generar informe completo: " + e.getMessage());
                     e.printStackTrace();
-                    return "Error al generar informe completo: " + e.getMessage();
+                    throw new UncheckedIOException("Error al generar informe completo: " + e.getMessage(), e);
                 } catch (Exception e) {
                     System.err.println("[AsyncReportService] ✗ Error inesperado al generar informe completo: " + e.getMessage());
                     e.printStackTrace();
-                    return "Error inesperado: " + e.getMessage();
+                    throw new IllegalStateException("Error inesperado: " + e.getMessage(), e);
                 }
             });
     }
-
-
+    
+    
     public Thread generarInformeClientesConThreadDedicado() {
         String filename = "informe_clientes_thread_" + 
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
@@ -414,7 +587,7 @@ public class AsyncReportService {
         return thread;
     }
     
- 
+    
     public Future<Integer> contarClientesAsync() {
         return executorService.submit(new Callable<Integer>() { // contar clientes asíncrono con callable y executor service
             @Override
@@ -425,9 +598,51 @@ public class AsyncReportService {
         });
     }
     
+    public int getQueueDepth() { // informes esperando un hilo libre del pool (o permiso del semaforo con hilos virtuales)
+        if (executorService instanceof VirtualThreadExecutor virtual) {
+            return virtual.getWaiting();
+        }
+        return ((ThreadPoolExecutor) executorService).getQueue().size();
+    }
+    
+    public int getActiveThreads() {
+        if (executorService instanceof VirtualThreadExecutor virtual) {
+            return virtual.getRunning();
+        }
+        return ((ThreadPoolExecutor) executorService).getActiveCount();
+    }
+    
+    public long getInformesLanzados() { // informes que de verdad se generaron
+        return informesLanzados.sum();
+    }
+    
+    public long getInformesCompartidos() {
+        return informesCompartidos.sum();
+    }
+    
+    public long getInformesRecientes() {
+        return informesRecientes.sum();
+    }
+    
+    public long getPinnedEvents() { // veces que un hilo virtual bloqueo su portador mas del umbral
+        return pinnedMonitor != null ? pinnedMonitor.getPinnedEvents() : 0;
+    }
+    
+    public long getPinnedNanos() {
+        return pinnedMonitor != null ? pinnedMonitor.getPinnedNanos() : 0;
+    }
+    
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+    
+    @PreDestroy
     public void shutdown() {
         executorService.shutdown();
         scheduler.shutdown();
+        if (pinnedMonitor != null) {
+            pinnedMonitor.close();
+        }
     }
 }
 
@@ -0,0 +1,115 @@
+package org.david.crm.concurrent;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// tabla de tamaño fijo para el estado por cliente del RateLimiter: direccionamiento abierto sobre dos arrays de long,
+// sin objetos por cliente ni locks. Memoria fija (16 bytes por hueco) aunque lleguen millones de IPs distintas.
+//  - keys[i]: hash de 64 bits del cliente (0 = hueco libre; un hueco ocupado nunca vuelve a 0)
+//  - states[i]: estado empaquetado del algoritmo (cubo de tokens o ventanas, lo decide RateLimiter). 0 = cliente sin consumo
+//  - states[slots]: estado compartido de desbordamiento para los clientes que no caben
+class LimiterTable {
+    
+    private static final int MAX_PROBE = 16; // huecos que se miran a partir del hash antes de rendirse
+    
+    private final AtomicLongArray keys;
+    private final AtomicLongArray states;
+    private final int mask;
+    private final IdleCheck idleCheck; // un hueco inactivo ya no limita a nadie y se puede reutilizar sin perder nada
+    // el reloj empieza un dia "antes" de crear la tabla: un estado 0 es un consumo de hace mas de un dia, o sea sin consumo
+    private final long epochNanos = System.nanoTime() - 86_400_000_000_000L;
+    
+    private final AtomicInteger used = new AtomicInteger();
+    private final LongAdder reclaimed = new LongAdder();
+    
+    LimiterTable(int maxEntries, IdleCheck idleCheck) {
+        int size = Integer.highestOneBit(Math.max(MAX_PROBE, maxEntries - 1)) << 1; // potencia de dos >= maxEntries
+        this.keys = new AtomicLongArray(size);
+        this.states = new AtomicLongArray(size + 1);
+        this.mask = size - 1;
+        this.idleCheck = idleCheck;
+    }
+    
+    long nowMs() {
+        return (System.nanoTime() - epochNanos) / 1_000_000L;
+    }
+    
+    // hueco del cliente, reservando uno libre o reutilizando uno inactivo si no existe; -1 si la zona del hash esta llena de clientes activos
+    int slotFor(long hash, long now) {
+        int start = (int) (hash ^ (hash >>> 32)) & mask;
+        int idle = -1;
+        for (int probe = 0; probe < MAX_PROBE; probe++) {
+            int i = (start + probe) & mask;
+            long key = keys.get(i);
+            if (key == 0) {
+                if (keys.compareAndSet(i, 0, hash)) {
+                    used.incrementAndGet();
+                    return i;
+                }
+                key = keys.get(i); // otro hilo lo acaba de ocupar, puede ser el mismo cliente
+            }
+            if (key == hash) {
+                return i;
+            }
+            if (idle < 0 && idleCheck.isIdle(states.get(i), now)) {
+                idle = i;
+            }
+        }
+        return idle >= 0 ? reclaim(idle, hash, now) : -1;
+    }
+    
+    private int reclaim(int i, long hash, long now) {
+        long state = states.get(i);
+        long oldKey = keys.get(i);
+        // primero el estado: si el antiguo dueño vuelve justo ahora su CAS sobre el estado gana y no se reutiliza
+        if (idleCheck.isIdle(state, now) && states.compareAndSet(i, state, 0) && keys.compareAndSet(i, oldKey, hash)) {
+            reclaimed.increment();
+            return i;
+        }
+        return keys.get(i) == hash ? i : -1;
+    }
+    
+    int overflowSlot() {
+        return keys.length();
+    }
+    
+    long getState(int i) {
+        return states.get(i);
+    }
+    
+    boolean compareAndSetState(int i, long expected, long value) {
+        return states.compareAndSet(i, expected, value);
+    }
+    
+    // FNV-1a de 64 bits sobre los caracteres; la tabla guarda solo el hash, no el String
+    static long hash(String clientId) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < clientId.length(); i++) {
+            h ^= clientId.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+    
+    int getSlots() {
+        return keys.length();
+    }
+    
+    int getUsed() {
+        return used.get();
+    }
+    
+    long getReclaimed() {
+        return reclaimed.sum();
+    }
+    
+    long getFootprintBytes() { // dos arrays de long; las cabeceras de objeto son despreciables
+        return (long) Long.BYTES * (keys.length() + states.length());
+    }
+    
+    
+    interface IdleCheck { // depende del formato del estado: cubo lleno otra vez o ventanas ya caducadas
+        boolean isIdle(long state, long now);
+    }
+}
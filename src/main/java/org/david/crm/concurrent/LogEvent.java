@@ -0,0 +1,78 @@
+package org.david.crm.concurrent;
+
+// evento de log estructurado: tipo + campos con valor tipado, sin concatenar nada en el hilo de la peticion.
+// Cada hilo reutiliza el suyo (AsyncLogService lo guarda en un ThreadLocal) y log() copia los campos al hueco de la cola:
+// las claves y los valores de texto se guardan por referencia y el JSON lo escribe despues el hilo escritor.
+// Si el nivel esta desactivado se devuelve DISABLED y los with() no hacen nada:
+//
+//     logService.info("cliente.recuperado").with("id", id).with("nombre", cliente.getNombre()).log();
+public final class LogEvent {
+    
+    static final int MAX_FIELDS = 6; // los que sobran se ignoran
+    static final byte LONG = 0;
+    static final byte STRING = 1;
+    static final byte BOOLEAN = 2;
+    
+    static final LogEvent DISABLED = new LogEvent(null);
+    
+    private final AsyncLogService service;
+    AsyncLogService.Level level;
+    String type; // null = libre para reutilizar
+    int count;
+    final String[] keys = new String[MAX_FIELDS];
+    final byte[] kinds = new byte[MAX_FIELDS];
+    final long[] longs = new long[MAX_FIELDS];
+    final String[] strings = new String[MAX_FIELDS];
+    
+    LogEvent(AsyncLogService service) {
+        this.service = service;
+    }
+    
+    LogEvent begin(AsyncLogService.Level level, String type) {
+        this.level = level;
+        this.type = type;
+        this.count = 0;
+        return this;
+    }
+    
+    public LogEvent with(String key, long value) {
+        if (service != null && count < MAX_FIELDS) {
+            keys[count] = key;
+            kinds[count] = LONG;
+            longs[count++] = value;
+        }
+        return this;
+    }
+    
+    public LogEvent with(String key, String value) {
+        if (service != null && count < MAX_FIELDS) {
+            keys[count] = key;
+            kinds[count] = STRING;
+            strings[count++] = value;
+        }
+        return this;
+    }
+    
+    public LogEvent with(String key, boolean value) {
+        if (service != null && count < MAX_FIELDS) {
+            keys[count] = key;
+            kinds[count] = BOOLEAN;
+            longs[count++] = value ? 1 : 0;
+        }
+        return this;
+    }
+    
+    public void log() { // encola el evento y deja el objeto libre para el siguiente
+        if (service == null) {
+            return;
+        }
+        try {
+            service.submit(this);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                strings[i] = null;
+            }
+            type = null;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.david.crm.concurrent;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// cola acotada de muchos productores para el hilo escritor del log, sin locks (anillo de Vyukov):
+// cada hueco lleva un numero de secuencia que dice si esta libre para la vuelta pos (== pos) o ya tiene dato (== pos + 1).
+// Los productores se reparten las posiciones con un CAS sobre tail y las lecturas con un CAS sobre head: ademas del escritor,
+// un productor con la politica DROP_OLDEST puede sacar la entrada mas antigua para hacer sitio.
+// Cada hueco guarda un texto libre o un evento estructurado (tipo + hasta LogEvent.MAX_FIELDS campos) en arrays planos
+// reservados al crear la cola: encolar no reserva memoria
+class LogRingBuffer {
+    
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final long[] marks; // dato extra por entrada (el carril critico guarda aqui la barrera de orden)
+    private final byte[] levels;
+    private final String[] messages; // texto libre, o el tipo si es un evento
+    private final boolean[] structured;
+    private final int[] fieldCounts;
+    // campos de los eventos: los del hueco i van de i * MAX_FIELDS a i * MAX_FIELDS + fieldCounts[i]
+    private final String[] keys;
+    private final byte[] kinds;
+    private final long[] longs;
+    private final String[] strings;
+    private final Entry entry = new Entry(); // vista del hueco que se esta entregando al escritor
+    
+    private final AtomicLong tail = new AtomicLong(); // siguiente posicion a reservar por los productores
+    private final AtomicLong head = new AtomicLong(); // siguiente posicion a leer
+    
+    LogRingBuffer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1; // potencia de dos >= capacity
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.times = new long[this.capacity];
+        this.marks = new long[this.capacity];
+        this.levels = new byte[this.capacity];
+        this.messages = new String[this.capacity];
+        this.structured = new boolean[this.capacity];
+        this.fieldCounts = new int[this.capacity];
+        this.keys = new String[this.capacity * LogEvent.MAX_FIELDS];
+        this.kinds = new byte[this.capacity * LogEvent.MAX_FIELDS];
+        this.longs = new long[this.capacity * LogEvent.MAX_FIELDS];
+        this.strings = new String[this.capacity * LogEvent.MAX_FIELDS];
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    // false si la cola esta llena: nunca espera
+    boolean offer(long timeMillis, String message) {
+        return offer(timeMillis, AsyncLogService.Level.INFO, message, null, 0) >= 0;
+    }
+    
+    // texto libre (event == null) o evento estructurado. Posicion de la entrada en la cola (crece sin volver atras), -1 si esta llena
+    long offer(long timeMillis, AsyncLogService.Level level, String message, LogEvent event, long mark) {
+        long pos = tail.get();
+        while (true) {
+            int i = (int) pos & mask;
+            long diff = sequences.get(i) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return -1; // el hueco aun tiene el dato de la vuelta anterior
+            } else {
+                pos = tail.get(); // otro productor se adelanto
+            }
+        }
+        int i = (int) pos & mask;
+        times[i] = timeMillis;
+        marks[i] = mark;
+        levels[i] = (byte) level.ordinal();
+        if (event == null) {
+            messages[i] = message;
+            structured[i] = false;
+            fieldCounts[i] = 0;
+        } else {
+            messages[i] = event.type;
+            structured[i] = true;
+            int count = event.count;
+            int base = i * LogEvent.MAX_FIELDS;
+            System.arraycopy(event.keys, 0, keys, base, count);
+            System.arraycopy(event.kinds, 0, kinds, base, count);
+            System.arraycopy(event.longs, 0, longs, base, count);
+            System.arraycopy(event.strings, 0, strings, base, count);
+            fieldCounts[i] = count;
+        }
+        sequences.set(i, pos + 1); // publica el dato: el consumidor lo ve completo al leer la secuencia
+        return pos;
+    }
+    
+    // entrega hasta max entradas en orden al escritor; devuelve cuantas. El hueco no se libera hasta que el escritor
+    // lo ha codificado (la Entry apunta a el)
+    int drainTo(Sink sink, int max) throws IOException {
+        int drained = 0;
+        while (drained < max) {
+            long pos = claim();
+            if (pos < 0) {
+                break;
+            }
+            int i = (int) pos & mask;
+            entry.slot = i;
+            try {
+                sink.accept(entry);
+            } finally {
+                release(i, pos);
+            }
+            drained++;
+        }
+        return drained;
+    }
+    
+    // descarta la entrada mas antigua; false si no habia ninguna publicada
+    boolean discardOldest() {
+        long pos = claim();
+        if (pos < 0) {
+            return false;
+        }
+        release((int) pos & mask, pos);
+        return true;
+    }
+    
+    // reserva la posicion mas antigua con dato publicado, -1 si no hay
+    private long claim() {
+        long pos = head.get();
+        while (true) {
+            long diff = sequences.get((int) pos & mask) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                return -1; // vacia, o un productor ha reservado el hueco y aun no ha publicado
+            } else {
+                pos = head.get(); // otro lector se adelanto
+            }
+        }
+    }
+    
+    private void release(int i, long pos) {
+        messages[i] = null;
+        for (int f = i * LogEvent.MAX_FIELDS, end = f + fieldCounts[i]; f < end; f++) {
+            strings[f] = null; // no retener los textos de los campos
+        }
+        sequences.set(i, pos + capacity); // libre para la siguiente vuelta
+    }
+    
+    // mark de la entrada mas antigua sin sacarla, -1 si no hay ninguna publicada. Solo con un unico lector (carril critico)
+    long peekMark() {
+        long pos = head.get();
+        int i = (int) pos & mask;
+        return sequences.get(i) == pos + 1 ? marks[i] : -1;
+    }
+    
+    long headPosition() { // entradas ya sacadas desde el arranque
+        return head.get();
+    }
+    
+    long tailPosition() { // entradas reservadas desde el arranque
+        return tail.get();
+    }
+    
+    boolean isEmpty() {
+        long pos = head.get();
+        return sequences.get((int) pos & mask) != pos + 1;
+    }
+    
+    int size() { // aproximado: tail y head se leen en momentos distintos
+        return (int) Math.max(0, Math.min(capacity, tail.get() - head.get()));
+    }
+    
+    int getCapacity() {
+        return capacity;
+    }
+    
+    
+    interface Sink {
+        void accept(Entry entry) throws IOException;
+    }
+    
+    
+    // entrada que se esta entregando; solo es valida dentro de Sink.accept
+    final class Entry {
+        private int slot;
+        
+        long time() {
+            return times[slot];
+        }
+        
+        AsyncLogService.Level level() {
+            return AsyncLogService.Level.VALUES[levels[slot]];
+        }
+        
+        boolean isEvent() {
+            return structured[slot];
+        }
+        
+        String message() { // el texto, o el tipo si es un evento
+            return messages[slot];
+        }
+        
+        int fieldCount() {
+            return fieldCounts[slot];
+        }
+        
+        String key(int field) {
+            return keys[slot * LogEvent.MAX_FIELDS + field];
+        }
+        
+        byte kind(int field) {
+            return kinds[slot * LogEvent.MAX_FIELDS + field];
+        }
+        
+        long longValue(int field) {
+            return longs[slot * LogEvent.MAX_FIELDS + field];
+        }
+        
+        String stringValue(int field) {
+            return strings[slot * LogEvent.MAX_FIELDS + field];
+        }
+    }
+}
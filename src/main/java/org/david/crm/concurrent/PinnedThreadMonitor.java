@@ -0,0 +1,66 @@
+package org.david.crm.concurrent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+// escucha los eventos jdk.VirtualThreadPinned de JFR: un hilo virtual que se bloquea dentro de un synchronized o de un
+// metodo nativo no suelta su hilo portador (en Java 21 el driver de MySQL 8.0 y Hibernate tienen synchronized en el
+// camino de cada consulta). Cuenta los que pasan de thresholdMs y los registra con el primer marco de fuera del JDK,
+// que es el codigo a cambiar (por ejemplo a ReentrantLock)
+class PinnedThreadMonitor {
+    
+    private final RecordingStream stream = new RecordingStream();
+    private final LongAdder pinnedEvents = new LongAdder();
+    private final LongAdder pinnedNanos = new LongAdder();
+    private final AsyncLogService logService;
+    
+    PinnedThreadMonitor(long thresholdMs, AsyncLogService logService) {
+        this.logService = logService;
+        stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+    }
+    
+    void start() {
+        stream.startAsync();
+    }
+    
+    void close() {
+        stream.close();
+    }
+    
+    private void onPinned(RecordedEvent event) {
+        pinnedEvents.increment();
+        pinnedNanos.add(event.getDuration().toNanos());
+        String frame = firstApplicationFrame(event);
+        if (logService != null) {
+            logService.warn("hilo_virtual.bloqueado").with("ms", event.getDuration().toMillis()).with("marco", frame).log();
+        }
+    }
+    
+    private static String firstApplicationFrame(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "desconocido";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                return type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return frames.isEmpty() ? "desconocido" : frames.get(0).getMethod().getType().getName() + "." + frames.get(0).getMethod().getName();
+    }
+    
+    long getPinnedEvents() {
+        return pinnedEvents.sum();
+    }
+    
+    long getPinnedNanos() {
+        return pinnedNanos.sum();
+    }
+}
@@ -1,112 +1,302 @@
 package org.david.crm.concurrent;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.david.crm.config.AppConfig;
 
 import jakarta.enterprise.context.ApplicationScoped;
 
 
 @ApplicationScoped
-public class RateLimiter { // limite de requests por minuto por cliente
+public class RateLimiter { // limite por cliente segun la ruta: token bucket (por defecto) o ventana deslizante, elegido con ratelimit.algorithm
     
-
-    private final ConcurrentHashMap<String, RequestCounter> requestCounters = new ConcurrentHashMap<>(); // utilzaria la ip del cliente como clave y un contador de requests por minuto como valor
+    // sin hilo de limpieza: el estado de cada cliente se pone al dia al consultarlo con el tiempo transcurrido (reloj monotono).
+    // El estado vive en una tabla de tamaño fijo (ratelimit.maxEntries): un barrido de IPs falsas no hace crecer el heap
+    private final LimiterTable table;
+    private final Algorithm algorithm;
     
-
-    private static final int MAX_REQUESTS_PER_MINUTE = 100; // maximo de requests por minuto
+    // token bucket: milesimas de token (24 bits altos) | ultimo relleno en ms (40 bits bajos). 0 = cubo lleno
+    private static final int TOKEN_BITS = 24;
+    private static final long MAX_MILLI_TOKENS = (1L << TOKEN_BITS) - 1;
+    private static final int TIME_BITS = 40; // ~34 años en ms
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final long MILLI_TOKENS = 1000; // los tokens se guardan en milesimas para no perder el relleno parcial
+    private static final long MS_PER_MINUTE = 60_000L;
     
-
-    private static final long WINDOW_MS = 60_000; // ventana de tiempo en milisegundos
+    // ventanas: id de la ventana actual (24 bits altos) | consumo de la anterior (20 bits) | consumo de la actual (20 bits bajos).
+    // 0 = ventana 0, que ya quedo atras al arrancar el reloj un dia antes: sin consumo
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long WINDOW_MASK = (1L << (64 - 2 * COUNT_BITS)) - 1;
+    private final long windowMs = Math.max(1000, AppConfig.getLong("ratelimit.window.ms", 60_000));
+    
+    public static final String ROL_ANONIMO = "anonimo"; // peticiones sin sesion (login, 401): se limitan por IP
+    
+    // limites por rol (rol de la sesion: pseudoadmin, comercial, cliente) configurables en crm.properties
+    private final Limit anonimo = Limit.load(ROL_ANONIMO, 30, 30);
+    private final Limit cliente = Limit.load("cliente", 100, 100);
+    private final Limit comercial = Limit.load("comercial", 200, 200);
+    private final Limit pseudoadmin = Limit.load("pseudoadmin", 400, 400);
+    // estado unico para los clientes nuevos cuando la tabla esta llena de clientes activos: el exceso comparte un solo limite
+    private final Limit overflow = Limit.load("overflow", 100, 100);
+    
+    private final LongAdder overflowRequests = new LongAdder();
+    private final LongAdder allowedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
     
     public RateLimiter() {
-
-        Thread cleanerThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    try {
-                        Thread.sleep(WINDOW_MS); // limpia el contador de requests por minuto cada ventana de tiempo
-                        requestCounters.clear();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
+        algorithm = Algorithm.fromConfig(AppConfig.get("ratelimit.algorithm", "tokenBucket"));
+        long maxFullRefillMs = 0;
+        for (Limit limit : new Limit[] { anonimo, cliente, comercial, pseudoadmin }) {
+            maxFullRefillMs = Math.max(maxFullRefillMs, limit.fullRefillMs);
+        }
+        // un hueco solo se reutiliza cuando su cubo ya estaria lleno o sus dos ventanas han caducado: expulsarlo no regala nada a nadie
+        long idleMs = Math.max(AppConfig.getLong("ratelimit.idleEvictMs", 120_000),
+            algorithm == Algorithm.TOKEN_BUCKET ? maxFullRefillMs : windowMs);
+        if (algorithm == Algorithm.TOKEN_BUCKET) {
+            table = new LimiterTable(AppConfig.getInt("ratelimit.maxEntries", 65536),
+                (state, now) -> now - (state & TIME_MASK) > idleMs);
+        } else {
+            table = new LimiterTable(AppConfig.getInt("ratelimit.maxEntries", 65536),
+                (state, now) -> now - windowEnd(state, now) > idleMs);
+        }
+        System.out.println("[RateLimiter] Algoritmo: " + algorithm.getName());
+    }
+    
+    
+    public boolean allowRequest(String clientId) { // peticion de coste 1 sin sesion
+        return tryConsume(clientId, ROL_ANONIMO, 1).isAllowed();
+    }
+    
+    // gasta cost unidades del limite de clientId; si no quedan suficientes no gasta nada y la peticion se rechaza
+    public Decision tryConsume(String clientId, String role, int cost) {
+        Limit limit = limitFor(role);
+        long now = table.nowMs();
+        int slot = table.slotFor(LimiterTable.hash(clientId), now);
+        if (slot < 0) {
+            overflowRequests.increment();
+            slot = table.overflowSlot();
+            limit = overflow;
+        }
+        Decision decision = algorithm == Algorithm.TOKEN_BUCKET
+            ? consumeTokens(slot, limit, cost, now)
+            : consumeWindow(slot, limit, cost, now, algorithm == Algorithm.SLIDING_WINDOW);
+        (decision.isAllowed() ? allowedRequests : rejectedRequests).increment();
+        return decision;
+    }
+    
+    private Decision consumeTokens(int slot, Limit limit, int cost, long now) {
+        long costMilli = Math.min(cost, limit.capacity) * MILLI_TOKENS; // una ruta mas cara que el cubo entero seguiria siendo posible con el cubo lleno
+        
+        while (true) { // CAS sobre el estado empaquetado, sin locks por cliente
+            long state = table.getState(slot);
+            long last = state & TIME_MASK;
+            long tokens = state >>> TIME_BITS;
+            long gained = limit.refill(now - last);
+            if (gained > 0) {
+                tokens = Math.min(limit.capacityMilli, tokens + gained);
+                // solo se avanza el tiempo que ya se ha convertido en tokens, el resto se acumula para la siguiente
+                last = tokens == limit.capacityMilli ? now : last + limit.msFor(gained);
             }
-        }, "RateLimitCleanerThread");
-        cleanerThread.setDaemon(true);
-        cleanerThread.start();
+            boolean allowed = tokens >= costMilli;
+            if (allowed) {
+                tokens -= costMilli;
+            }
+            long next = (tokens << TIME_BITS) | (last & TIME_MASK);
+            if (next == state || table.compareAndSetState(slot, state, next)) {
+                long retryAfter = allowed ? 0 : Math.max(1, (limit.msFor(costMilli - tokens) + 999) / 1000);
+                return new Decision(allowed, (int) (tokens / MILLI_TOKENS), limit.capacity, retryAfter);
+            }
+        }
     }
     
-
-    public boolean allowRequest(String clientId) { // permite una request si el contador de requests por minuto es menor al maximo
-        RequestCounter counter = requestCounters.computeIfAbsent(
-            clientId, 
-            k -> new RequestCounter()
-        );
+    // contador de ventana deslizante: consumo estimado = anterior * parte de la ventana anterior que aun cae en el ultimo windowMs + actual.
+    // Sin sliding se ignora la anterior y queda la ventana fija de siempre (con su doble rafaga en el cambio de ventana)
+    private Decision consumeWindow(int slot, Limit limit, int cost, long now, boolean sliding) {
+        long max = limit.perWindow(windowMs);
+        long units = Math.min(cost, max);
+        long window = now / windowMs;
+        long elapsed = now % windowMs;
+        long windowId = window & WINDOW_MASK;
         
-        return counter.incrementAndCheck();
+        while (true) {
+            long state = table.getState(slot);
+            long previous = (state >>> COUNT_BITS) & COUNT_MASK;
+            long current = state & COUNT_MASK;
+            long stateWindow = state >>> (2 * COUNT_BITS);
+            if (stateWindow != windowId) { // la ventana del estado ya paso: la actual pasa a ser la anterior o ambas caducan
+                previous = stateWindow == ((window - 1) & WINDOW_MASK) ? current : 0;
+                current = 0;
+            }
+            long weighted = sliding ? previous * (windowMs - elapsed) / windowMs : 0;
+            if (weighted + current + units > max) {
+                // rechazada: no se escribe nada, el cambio de ventana se recalcula igual en la siguiente consulta
+                long retryMs = retryWindowMs(max, units, previous, current, elapsed, sliding);
+                return new Decision(false, (int) Math.max(0, max - weighted - current), (int) max,
+                    Math.max(1, (retryMs + 999) / 1000));
+            }
+            long next = (windowId << (2 * COUNT_BITS)) | (previous << COUNT_BITS) | (current + units);
+            if (table.compareAndSetState(slot, state, next)) {
+                return new Decision(true, (int) (max - weighted - current - units), (int) max, 0);
+            }
+        }
     }
     
-
-    public int getRemainingRequests(String clientId) {
-        RequestCounter counter = requestCounters.get(clientId);
-        if (counter == null) {
-            return MAX_REQUESTS_PER_MINUTE;
+    // ms hasta que units vuelvan a caber: o decae lo suficiente la ventana anterior, o hay que esperar al cambio de ventana
+    private long retryWindowMs(long max, long units, long previous, long current, long elapsed, boolean sliding) {
+        long toNextWindow = windowMs - elapsed;
+        if (!sliding) {
+            return toNextWindow;
+        }
+        if (current + units <= max) { // con la actual cabe: basta con que la anterior pese menos
+            return toNextWindow - (max - units - current) * windowMs / previous;
         }
-        return counter.getRemaining();
+        // la actual pasara a ser la anterior y tiene que decaer hasta dejar sitio
+        return toNextWindow + windowMs - (max - units) * windowMs / current;
     }
     
-
-    private static class RequestCounter {
-
-        private final AtomicInteger count = new AtomicInteger(0);
+    // ms (reloj de la tabla) en que termino la ventana del estado; el id guarda solo 24 bits, se reconstruye respecto a now
+    private long windowEnd(long state, long now) {
+        long window = now / windowMs;
+        long age = (window - (state >>> (2 * COUNT_BITS))) & WINDOW_MASK;
+        return (window - age + 1) * windowMs;
+    }
+    
+    public Limit limitFor(String role) {
+        if (role == null) {
+            return anonimo;
+        }
+        switch (role) {
+            case "pseudoadmin": return pseudoadmin;
+            case "comercial": return comercial;
+            case "cliente": return cliente;
+            default: return anonimo;
+        }
+    }
+    
+    public StoreSnapshot getSnapshot() {
+        return new StoreSnapshot(algorithm.getName(), table.getSlots(), table.getUsed(), table.getReclaimed(),
+            overflowRequests.sum(), allowedRequests.sum(), rejectedRequests.sum(), table.getFootprintBytes());
+    }
+    
+    
+    public static class Limit {
+        private final int capacity; // rafaga maxima (tokens con el cubo lleno)
+        private final int refillPerMinute; // tokens que se recuperan por minuto
+        private final long capacityMilli;
+        private final long fullRefillMs; // tiempo en rellenar el cubo vacio, tope del tiempo transcurrido para no desbordar
         
-        // con volatile
-        private volatile long windowStart = System.currentTimeMillis(); // Hilo 1: Lee windowStart (valor viejo en caché) → Ventana expirada? NO
-                                                                        //Hilo 2: Actualiza windowStart (valor nuevo) → Reset
-                                                                        //Hilo 1: Sigue usando valor viejo → Lógica incorrecta
-
-
-                                                                    // con volatile y lock
-                                                                        //Hilo 1: Lee windowStart (fuerza lectura de memoria) → Ventana expirada? SÍ
-                                                                        //Hilo 1: Entra al lock
-                                                                        //Hilo 2: Espera...
-                                                                        //Hilo 1: Actualiza windowStart → Reset
-                                                                        //Hilo 2: Lee windowStart actualizado → Lógica correcta
+        public Limit(int capacity, int refillPerMinute) {
+            // el estado empaquetado reserva 24 bits para las milesimas de token
+            this.capacity = (int) Math.max(1, Math.min(capacity, MAX_MILLI_TOKENS / MILLI_TOKENS));
+            this.refillPerMinute = Math.max(1, refillPerMinute);
+            this.capacityMilli = this.capacity * MILLI_TOKENS;
+            this.fullRefillMs = msFor(capacityMilli);
+        }
         
-
-        private final ReentrantLock lock = new ReentrantLock();
-
-
-        public boolean incrementAndCheck() {
-            long now = System.currentTimeMillis();
-            
-           
-            if (now - windowStart > WINDOW_MS) {
-                lock.lock();
-                try {
-
-                    if (now - windowStart > WINDOW_MS) {
-                        count.set(0);
-                        windowStart = now;
-                    }
-                } finally {
-                    lock.unlock();
+        static Limit load(String role, int defaultCapacity, int defaultRefillPerMinute) {
+            return new Limit(
+                AppConfig.getInt("ratelimit." + role + ".capacity", defaultCapacity),
+                AppConfig.getInt("ratelimit." + role + ".refillPerMinute", defaultRefillPerMinute));
+        }
+        
+        long refill(long elapsedMs) { // milesimas de token ganadas en elapsedMs (milesimas por ms = tokens por minuto / 60)
+            if (elapsedMs <= 0) {
+                return 0;
+            }
+            return Math.min(elapsedMs, fullRefillMs) * refillPerMinute / 60;
+        }
+        
+        long perWindow(long windowMs) { // con ventanas el limite es el ritmo de relleno aplicado a la duracion de la ventana
+            return Math.max(1, Math.min(COUNT_MASK, refillPerMinute * windowMs / MS_PER_MINUTE));
+        }
+        
+        long msFor(long milliTokens) { // ms hasta acumular milliTokens, redondeado hacia arriba
+            return (milliTokens * MS_PER_MINUTE + refillPerMinute * MILLI_TOKENS - 1) / (refillPerMinute * MILLI_TOKENS);
+        }
+        
+        // Getters
+        public int getCapacity() { return capacity; }
+        public int getRefillPerMinute() { return refillPerMinute; }
+    }
+    
+    
+    public static class StoreSnapshot {
+        private final String algorithm;
+        private final int slots;
+        private final int used;
+        private final long reclaimed;
+        private final long overflowRequests;
+        private final long allowedRequests;
+        private final long rejectedRequests;
+        private final long footprintBytes;
+        
+        public StoreSnapshot(String algorithm, int slots, int used, long reclaimed, long overflowRequests,
+                long allowedRequests, long rejectedRequests, long footprintBytes) {
+            this.algorithm = algorithm;
+            this.slots = slots;
+            this.used = used;
+            this.reclaimed = reclaimed;
+            this.overflowRequests = overflowRequests;
+            this.allowedRequests = allowedRequests;
+            this.rejectedRequests = rejectedRequests;
+            this.footprintBytes = footprintBytes;
+        }
+        
+        // Getters
+        public String getAlgorithm() { return algorithm; }
+        public int getSlots() { return slots; }
+        public int getUsed() { return used; }
+        public long getReclaimed() { return reclaimed; }
+        public long getOverflowRequests() { return overflowRequests; }
+        public long getAllowedRequests() { return allowedRequests; }
+        public long getRejectedRequests() { return rejectedRequests; }
+        public long getFootprintBytes() { return footprintBytes; }
+    }
+    
+    
+    public enum Algorithm {
+        TOKEN_BUCKET("tokenBucket"),
+        SLIDING_WINDOW("slidingWindow"),
+        FIXED_WINDOW("fixedWindow");
+        
+        private final String name;
+        
+        Algorithm(String name) {
+            this.name = name;
+        }
+        
+        static Algorithm fromConfig(String value) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name.equalsIgnoreCase(value)) {
+                    return algorithm;
                 }
             }
-            
-
-            int current = count.incrementAndGet();
-            return current <= MAX_REQUESTS_PER_MINUTE;
+            System.err.println("[RateLimiter] ratelimit.algorithm desconocido: " + value + ", se usa tokenBucket");
+            return TOKEN_BUCKET;
         }
         
-
-        public int getRemaining() {
-            int current = count.get();
-            return Math.max(0, MAX_REQUESTS_PER_MINUTE - current);
+        public String getName() { return name; }
+    }
+    
+    
+    public static class Decision {
+        private final boolean allowed;
+        private final int remaining;
+        private final int limit;
+        private final long retryAfterSeconds;
+        
+        public Decision(boolean allowed, int remaining, int limit, long retryAfterSeconds) {
+            this.allowed = allowed;
+            this.remaining = remaining;
+            this.limit = limit;
+            this.retryAfterSeconds = retryAfterSeconds;
         }
+        
+        // Getters
+        public boolean isAllowed() { return allowed; }
+        public int getRemaining() { return remaining; }
+        public int getLimit() { return limit; }
+        public long getRetryAfterSeconds() { return retryAfterSeconds; }
     }
 }
-
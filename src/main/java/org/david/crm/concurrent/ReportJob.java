@@ -0,0 +1,99 @@
+package org.david.crm.concurrent;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// un informe pedido por /api/informes: el id con el que se consulta despues, su estado, las filas procesadas hasta ahora,
+// los tiempos y el fichero generado. Lo actualiza el hilo (o los hilos) del informe y lo leen las consultas del dashboard.
+// Los getters son lo que se devuelve en JSON
+public class ReportJob {
+    
+    private final String id;
+    private final String tipo;
+    private final long creadoMillis;
+    private volatile long iniciadoMillis; // 0 = aun en cola
+    private volatile long terminadoMillis; // 0 = sin terminar
+    private final AtomicLong filas = new AtomicLong(); // el informe completo suma desde tres hilos
+    private volatile String ruta;
+    private volatile CompletableFuture<String> future;
+    
+    ReportJob(String id, String tipo) {
+        this.id = id;
+        this.tipo = tipo;
+        this.creadoMillis = System.currentTimeMillis();
+    }
+    
+    // el futuro del job termina despues de apuntar la hora: quien espere en future() ya ve terminado
+    void attach(CompletableFuture<String> future) {
+        this.future = future.whenComplete((result, error) -> terminadoMillis = System.currentTimeMillis());
+    }
+    
+    void started() { // el informe sale de la cola y empieza a trabajar
+        if (iniciadoMillis == 0) {
+            iniciadoMillis = System.currentTimeMillis();
+        }
+    }
+    
+    void addFilas(long n) {
+        filas.addAndGet(n);
+    }
+    
+    void setRuta(String ruta) {
+        this.ruta = ruta;
+    }
+    
+    public CompletableFuture<String> future() { // no es getter: no sale en el JSON
+        return future;
+    }
+    
+    boolean isTerminado() {
+        return terminadoMillis != 0;
+    }
+    
+    // Getters
+    public String getId() { return id; }
+    public String getTipo() { return tipo; }
+    public long getCreado() { return creadoMillis; }
+    public long getIniciado() { return iniciadoMillis; }
+    public long getTerminado() { return terminadoMillis; }
+    public long getFilas() { return filas.get(); }
+    public String getRuta() { return ruta; }
+    
+    public String getStatus() { // queued, processing, done o failed
+        CompletableFuture<String> current = future;
+        if (!current.isDone()) {
+            return iniciadoMillis == 0 ? "queued" : "processing";
+        }
+        return current.isCompletedExceptionally() ? "failed" : "done";
+    }
+    
+    public long getDuracionMs() { // desde que empezo a trabajar hasta que termino (o hasta ahora)
+        long start = iniciadoMillis;
+        if (start == 0) {
+            return 0;
+        }
+        long end = terminadoMillis;
+        return (end != 0 ? end : System.currentTimeMillis()) - start;
+    }
+    
+    public String getMessage() {
+        CompletableFuture<String> current = future;
+        return current.isDone() && !current.isCompletedExceptionally() ? current.join() : null;
+    }
+    
+    public String getError() {
+        CompletableFuture<String> current = future;
+        if (!current.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            current.join();
+            return null;
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            return cause.getMessage();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.david.crm.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import org.david.crm.config.AppConfig;
+import org.david.crm.repository.Repository;
+
+import jakarta.persistence.EntityManager;
+
+// escribe un informe linea a linea sin String.format ni un FileWriter sin buffer: las lineas se componen en un
+// StringBuilder, se codifican en UTF-8 a un buffer directo de report.write.bufferBytes y van al FileChannel cuando se
+// llena. Con writeRows las filas llegan de un stream de Hibernate (cursor con fetch size) y la sesion se vacia cada
+// CHUNK_ROWS filas, asi un informe de millones de filas usa siempre la misma memoria
+public class ReportWriter implements Closeable {
+    
+    public static final int CHUNK_ROWS = Repository.STREAM_FETCH_SIZE; // un viaje a MySQL = un clear de la sesion
+    private static final int BUFFER_BYTES = AppConfig.getInt("report.write.bufferBytes", 256 * 1024);
+    private static final int ENCODE_CHARS = 8 * 1024; // las lineas se codifican a bloques, no una a una
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES); // directo: write() no lo copia otra vez
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder(ENCODE_CHARS + 256);
+    private CharBuffer chars = CharBuffer.allocate(ENCODE_CHARS + 256);
+    
+    public interface RowFormat<T> { // escribe una fila con append(...); el salto de linea lo pone writeRows
+        void write(ReportWriter out, T row);
+    }
+    
+    public ReportWriter(String path) throws IOException {
+        this(Paths.get(path));
+    }
+    
+    public ReportWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+    
+    public ReportWriter append(String value) {
+        line.append(value);
+        return this;
+    }
+    
+    public ReportWriter append(Object value) { // null se escribe "null", como hacia String.format
+        line.append(value);
+        return this;
+    }
+    
+    public ReportWriter append(long value) {
+        line.append(value);
+        return this;
+    }
+    
+    public ReportWriter append(char value) {
+        line.append(value);
+        return this;
+    }
+    
+    public ReportWriter newLine() throws IOException {
+        line.append('\n');
+        if (line.length() >= ENCODE_CHARS) {
+            encodePending();
+        }
+        return this;
+    }
+    
+    // una linea por fila del stream (lo cierra al acabar). Cada CHUNK_ROWS filas se vacia el contexto de persistencia,
+    // tambien de las asociaciones traidas con JOIN FETCH, y se avisa a progress con las filas del chunk
+    public <T> long writeRows(EntityManager em, Stream<T> rows, RowFormat<T> format, LongConsumer progress) throws IOException {
+        long total = 0;
+        int inChunk = 0;
+        try (rows) {
+            Iterator<T> it = rows.iterator();
+            while (it.hasNext()) {
+                format.write(this, it.next());
+                newLine();
+                total++;
+                if (++inChunk == CHUNK_ROWS) {
+                    em.clear();
+                    progress.accept(inChunk);
+                    inChunk = 0;
+                }
+            }
+        }
+        if (inChunk > 0) {
+            em.clear();
+            progress.accept(inChunk);
+        }
+        return total;
+    }
+    
+    private void encodePending() throws IOException {
+        int length = line.length();
+        if (length == 0) {
+            return;
+        }
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(length);
+        }
+        chars.clear();
+        line.getChars(0, length, chars.array(), 0);
+        chars.limit(length);
+        line.setLength(0);
+        // siempre se codifican lineas completas: un par suplente nunca queda partido entre dos bloques
+        while (encoder.encode(chars, buffer, false) == CoderResult.OVERFLOW) {
+            writeBuffer();
+        }
+    }
+    
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            encodePending();
+            chars.clear().limit(0);
+            while (encoder.encode(chars, buffer, true) == CoderResult.OVERFLOW) {
+                writeBuffer();
+            }
+            while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+                writeBuffer();
+            }
+            writeBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
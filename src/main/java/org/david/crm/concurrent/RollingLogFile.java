@@ -0,0 +1,418 @@
+package org.david.crm.concurrent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.david.crm.config.AppConfig;
+
+// application.log con rotacion por tamaño y por dia. El hilo escritor de AsyncLogService escribe siempre en el fichero
+// activo; al cambiar el dia o pasar de maxBytes lo cierra, lo renombra a application-<dia>.<n>.log y abre otro vacio.
+// Los segmentos rotados los procesa un hilo aparte (el escritor no espera al gzip): los comprime, los apunta en
+// application.log.index con su rango de tiempo, lineas y tamaño, y aplica la retencion (numero de segmentos, espacio
+// total y antiguedad). El indice permite saber que segmento mirar sin descomprimirlos todos.
+// El fichero activo solo lo toca el hilo escritor y el indice solo el hilo archivador
+class RollingLogFile {
+    
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter LINE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final Path dir;
+    private final String baseName; // "application": segmentos application-2024-05-01.1.log(.gz)
+    private final Path activeFile;
+    private final Path indexFile;
+    private final long maxBytes;
+    private final boolean daily;
+    private final boolean compress;
+    // limites de retencion sobre los segmentos rotados (el activo no cuenta); 0 = sin limite
+    private final int maxFiles;
+    private final long maxTotalBytes;
+    private final long maxAgeMillis;
+    private final ZoneId zone = ZoneId.systemDefault();
+    
+    private final ExecutorService archiver = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "LogArchiverThread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Segment> segments = new ArrayList<>(); // del mas antiguo al mas nuevo; solo el hilo archivador
+    private volatile long archivedBytes;
+    private volatile int archivedSegments;
+    private volatile long rolls;
+    
+    // segmento activo (hilo escritor)
+    private FileChannel channel;
+    private long firstMillis = -1; // -1 = aun sin lineas
+    private long lastMillis;
+    private long rollAtMillis = Long.MAX_VALUE; // medianoche siguiente a la primera linea
+    private String sequenceDay; // dia del ultimo segmento rotado y su numero
+    private int sequence;
+    
+    
+    RollingLogFile(Path dir, String fileName, long maxBytes, boolean daily, boolean compress,
+                   int maxFiles, long maxTotalBytes, long maxAgeMillis) {
+        this.dir = dir;
+        this.activeFile = dir.resolve(fileName);
+        this.indexFile = dir.resolve(fileName + ".index");
+        this.baseName = fileName.endsWith(".log") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.daily = daily;
+        this.compress = compress;
+        this.maxFiles = maxFiles;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        archiver.execute(this::recover);
+    }
+    
+    static RollingLogFile fromConfig() {
+        return new RollingLogFile(
+            Paths.get(AppConfig.get("log.dir", ".")),
+            AppConfig.get("log.file", "application.log"),
+            AppConfig.getLong("log.roll.maxBytes", 100L * 1024 * 1024),
+            AppConfig.getBoolean("log.roll.daily", true),
+            AppConfig.getBoolean("log.roll.compress", true),
+            AppConfig.getInt("log.retention.maxFiles", 30),
+            AppConfig.getLong("log.retention.maxTotalBytes", 1024L * 1024 * 1024),
+            TimeUnit.DAYS.toMillis(AppConfig.getInt("log.retention.maxAgeDays", 14)));
+    }
+    
+    // abre (o reabre tras un error o una rotacion) el fichero activo en modo append
+    FileChannel open() throws IOException {
+        Files.createDirectories(dir);
+        channel = FileChannel.open(activeFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (firstMillis < 0 && channel.size() > 0) { // lo dejo un arranque anterior: su rango sale del propio fichero
+            firstMillis = firstTimestamp(activeFile);
+            lastMillis = Files.getLastModifiedTime(activeFile).toMillis();
+            rollAtMillis = daily ? nextMidnight(firstMillis) : Long.MAX_VALUE;
+        }
+        return channel;
+    }
+    
+    // true si una linea con esta hora ya es de otro dia que el segmento activo
+    boolean crossesDay(long timeMillis) {
+        return timeMillis >= rollAtMillis;
+    }
+    
+    void written(long timeMillis) { // por cada linea escrita
+        if (firstMillis < 0) {
+            firstMillis = timeMillis;
+            rollAtMillis = daily ? nextMidnight(timeMillis) : Long.MAX_VALUE;
+        }
+        lastMillis = timeMillis;
+    }
+    
+    // despues de un flush: el tamaño se mira en disco, asi que un segmento puede pasarse de maxBytes en un lote como mucho
+    boolean isFull() throws IOException {
+        return channel != null && channel.size() >= maxBytes;
+    }
+    
+    // el llamador ya ha hecho flush y cerrado el Writer (que cierra el canal). Renombra el fichero activo y deja el
+    // segmento al archivador; el siguiente open() empieza un fichero nuevo
+    void roll() throws IOException {
+        channel = null;
+        if (firstMillis < 0 || !Files.exists(activeFile) || Files.size(activeFile) == 0) {
+            return;
+        }
+        Path target = segmentPath(firstMillis);
+        Files.move(activeFile, target, StandardCopyOption.ATOMIC_MOVE);
+        Segment segment = new Segment(target.getFileName().toString(), firstMillis, lastMillis);
+        firstMillis = -1;
+        rollAtMillis = Long.MAX_VALUE;
+        rolls++;
+        archiver.execute(() -> archive(segment));
+    }
+    
+    // espera a que el archivador termine lo pendiente (cierre de la aplicacion)
+    void close() {
+        archiver.shutdown();
+        try {
+            if (!archiver.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("[AsyncLogService] El archivado de logs no termino a tiempo; se retoma en el siguiente arranque");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    Path getActiveFile() {
+        return activeFile;
+    }
+    
+    long getRolls() {
+        return rolls;
+    }
+    
+    int getArchivedSegments() {
+        return archivedSegments;
+    }
+    
+    long getArchivedBytes() { // bytes en disco de los segmentos rotados (comprimidos si log.roll.compress)
+        return archivedBytes;
+    }
+    
+    // application-<dia>.<n>.log con n siempre creciente dentro del dia, aunque la retencion haya borrado los primeros
+    private Path segmentPath(long firstMillis) {
+        String day = LocalDate.ofInstant(Instant.ofEpochMilli(firstMillis), zone).format(DAY);
+        if (!day.equals(sequenceDay)) {
+            sequenceDay = day;
+            sequence = highestSequence(day);
+        }
+        while (true) {
+            Path candidate = dir.resolve(baseName + "-" + day + "." + ++sequence + ".log");
+            if (!Files.exists(candidate) && !Files.exists(dir.resolve(candidate.getFileName() + ".gz"))) {
+                return candidate;
+            }
+        }
+    }
+    
+    private int highestSequence(String day) {
+        String prefix = baseName + "-" + day + ".";
+        int highest = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path path : stream) {
+                String rest = path.getFileName().toString().substring(prefix.length());
+                int end = rest.indexOf('.');
+                try {
+                    highest = Math.max(highest, Integer.parseInt(end < 0 ? rest : rest.substring(0, end)));
+                } catch (NumberFormatException e) {
+                    // no es un segmento
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[AsyncLogService] Error al revisar segmentos de log: " + e.getMessage());
+        }
+        return highest;
+    }
+    
+    private long nextMidnight(long timeMillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(timeMillis), zone).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+    
+    // hora de la primera linea ({"ts":"<ISO-8601>",... o "[yyyy-MM-dd HH:mm:ss] ..."); si no se entiende, la fecha de modificacion
+    private long firstTimestamp(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line != null && line.startsWith("{\"ts\":\"")) {
+                return OffsetDateTime.parse(line.substring(7, line.indexOf('"', 7))).toInstant().toEpochMilli();
+            }
+            if (line != null && line.length() > 21 && line.charAt(0) == '[') {
+                return LocalDateTime.parse(line.substring(1, 20), LINE_TIMESTAMP).atZone(zone).toInstant().toEpochMilli();
+            }
+        } catch (Exception e) {
+            // sin marca de tiempo reconocible (o binario): se usa la del fichero
+        }
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return System.currentTimeMillis();
+        }
+    }
+    
+    
+    // --- hilo archivador ---
+    
+    // comprime el segmento (contando sus lineas de paso), lo apunta en el indice y aplica la retencion
+    private void archive(Segment segment) {
+        Path source = dir.resolve(segment.file);
+        try {
+            segment.rawBytes = Files.size(source);
+            if (compress) {
+                Path gz = dir.resolve(segment.file + ".gz");
+                Path tmp = dir.resolve(segment.file + ".gz.tmp");
+                try (InputStream in = Files.newInputStream(source);
+                     OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE)) {
+                    segment.lines = copyCountingLines(in, out);
+                }
+                Files.move(tmp, gz, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                Files.delete(source);
+                segment.file = gz.getFileName().toString();
+                segment.bytes = Files.size(gz);
+            } else {
+                try (InputStream in = Files.newInputStream(source)) {
+                    segment.lines = copyCountingLines(in, OutputStream.nullOutputStream());
+                }
+                segment.bytes = segment.rawBytes;
+            }
+        } catch (IOException e) {
+            System.err.println("[AsyncLogService] Error al archivar " + segment.file + ": " + e.getMessage());
+            if (!Files.exists(source)) {
+                return;
+            }
+            segment.bytes = segment.rawBytes; // se queda sin comprimir pero sigue en el indice y en la retencion
+        }
+        segments.removeIf(s -> s.file.equals(segment.file) || (s.file + ".gz").equals(segment.file));
+        segments.add(segment);
+        segments.sort(Comparator.comparingLong(s -> s.firstMillis));
+        applyRetention();
+        saveIndex();
+    }
+    
+    private static long copyCountingLines(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long lines = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
+            }
+            out.write(buffer, 0, n);
+        }
+        return lines;
+    }
+    
+    // borra los segmentos mas antiguos mientras se pase de alguno de los limites
+    private void applyRetention() {
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.bytes;
+        }
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.get(0);
+            boolean tooMany = maxFiles > 0 && segments.size() > maxFiles;
+            boolean tooBig = maxTotalBytes > 0 && total > maxTotalBytes;
+            boolean tooOld = maxAgeMillis > 0 && oldest.lastMillis < cutoff;
+            if (!tooMany && !tooBig && !tooOld) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(dir.resolve(oldest.file));
+            } catch (IOException e) {
+                System.err.println("[AsyncLogService] No se pudo borrar " + oldest.file + ": " + e.getMessage());
+                break; // se reintenta en el siguiente archivado
+            }
+            total -= oldest.bytes;
+            segments.remove(0);
+        }
+        archivedBytes = total;
+        archivedSegments = segments.size();
+    }
+    
+    // una linea por segmento: fichero, desde, hasta (ISO-8601 UTC), lineas, bytes en disco, bytes sin comprimir.
+    // Se escribe en un temporal y se renombra para que nunca se lea a medias
+    private void saveIndex() {
+        Path tmp = dir.resolve(indexFile.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write("# fichero\tdesde\thasta\tlineas\tbytes\tbytesOriginales\n");
+            for (Segment segment : segments) {
+                out.write(segment.file + '\t' + Instant.ofEpochMilli(segment.firstMillis) + '\t' + Instant.ofEpochMilli(segment.lastMillis)
+                    + '\t' + segment.lines + '\t' + segment.bytes + '\t' + segment.rawBytes + '\n');
+            }
+        } catch (IOException e) {
+            System.err.println("[AsyncLogService] Error al guardar " + indexFile + ": " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("[AsyncLogService] Error al guardar " + indexFile + ": " + e.getMessage());
+        }
+    }
+    
+    // al arrancar: carga el indice (sin los segmentos que ya no existen), borra gzip a medias de un cierre brusco y
+    // archiva los segmentos rotados que se quedaron sin procesar
+    private void recover() {
+        if (!Files.isDirectory(dir)) { // primer arranque: el directorio lo crea open()
+            return;
+        }
+        if (Files.exists(indexFile)) {
+            try {
+                for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                    Segment segment = Segment.parse(line);
+                    if (segment != null && Files.exists(dir.resolve(segment.file))) {
+                        segments.add(segment);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("[AsyncLogService] Error al leer " + indexFile + ": " + e.getMessage());
+            }
+        }
+        List<Path> pending = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, baseName + "-*.log*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".gz.tmp")) {
+                    Files.deleteIfExists(path);
+                } else if (name.endsWith(".log") && (compress || segments.stream().noneMatch(s -> s.file.equals(name)))) {
+                    pending.add(path);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[AsyncLogService] Error al revisar segmentos de log: " + e.getMessage());
+        }
+        for (Path path : pending) {
+            String name = path.getFileName().toString();
+            Segment known = segments.stream().filter(s -> s.file.equals(name)).findFirst().orElse(null);
+            long last;
+            try {
+                last = Files.getLastModifiedTime(path).toMillis();
+            } catch (IOException e) {
+                continue;
+            }
+            archive(known != null ? known : new Segment(name, firstTimestamp(path), last));
+        }
+        applyRetention();
+        saveIndex();
+    }
+    
+    
+    private static class Segment { // una entrada del indice
+        String file;
+        final long firstMillis;
+        final long lastMillis;
+        long lines;
+        long bytes;
+        long rawBytes;
+        
+        Segment(String file, long firstMillis, long lastMillis) {
+            this.file = file;
+            this.firstMillis = firstMillis;
+            this.lastMillis = lastMillis;
+        }
+        
+        static Segment parse(String line) {
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                return null;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 6) {
+                return null;
+            }
+            try {
+                Segment segment = new Segment(fields[0], Instant.parse(fields[1]).toEpochMilli(), Instant.parse(fields[2]).toEpochMilli());
+                segment.lines = Long.parseLong(fields[3]);
+                segment.bytes = Long.parseLong(fields[4]);
+                segment.rawBytes = Long.parseLong(fields[5]);
+                return segment;
+            } catch (RuntimeException e) {
+                return null; // linea corrupta: el segmento se pierde del indice pero no se borra
+            }
+        }
+    }
+}
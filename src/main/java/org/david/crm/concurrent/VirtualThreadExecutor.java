@@ -0,0 +1,92 @@
+package org.david.crm.concurrent;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// un hilo virtual por tarea con un semaforo en vez de un numero fijo de hilos: las tareas que esperan permiso son
+// hilos virtuales aparcados (no ocupan un hilo del sistema) y como mucho maxConcurrent trabajan a la vez, que es lo que
+// de verdad hay que limitar (conexiones del pool JDBC), no los hilos
+class VirtualThreadExecutor extends AbstractExecutorService {
+    
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final AtomicInteger waiting = new AtomicInteger();
+    
+    VirtualThreadExecutor(String namePrefix, int maxConcurrent) {
+        this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(this.maxConcurrent, true); // FIFO: los informes salen en el orden en que se pidieron
+    }
+    
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(() -> {
+            waiting.incrementAndGet();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // apagado (shutdownNow) mientras esperaba: no llega a ejecutarse, pero quien espera el resultado tiene
+                // que enterarse. Las tareas con Future (submit, FutureTask) se cancelan; un Runnable suelto no tiene a
+                // quien avisar y por lo menos queda registrado
+                if (task instanceof Future<?> future) {
+                    future.cancel(false);
+                } else {
+                    System.err.println("[VirtualThreadExecutor] Tarea descartada sin ejecutar al interrumpirse la espera: " + task);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                waiting.decrementAndGet();
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+    
+    int getWaiting() { // tareas esperando permiso
+        return waiting.get();
+    }
+    
+    int getRunning() {
+        return maxConcurrent - permits.availablePermits();
+    }
+    
+    int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+    
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+    
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+    
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+    
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+    
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -6,8 +6,19 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import org.david.crm.config.CacheRegions;
+import org.david.crm.config.EntityManagerProducer;
+import org.david.crm.util.OpenMetricsWriter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
 import jakarta.enterprise.context.ApplicationScoped;
 
@@ -44,78 +55,128 @@ public class ApiStatistics { // clase que encapsula las estadisticas de la api y
         return filePath.toString();
     }
     
-    // contaadires atomicos 
+    // contadores repartidos en celdas (LongAdder): cada hilo suma en su celda y las peticiones concurrentes no se pelean
+    // por la misma linea de cache como con un AtomicInteger; de 64 bits, no desbordan en nodos que llevan meses arrancados.
+    // StatisticsFilter suma en este orden: total -> ok/error -> tiempo (+ numero de tiempos); getSummary lee al reves
     
-    private final AtomicInteger totalRequests = new AtomicInteger(0);
+    private final LongAdder totalRequests = new LongAdder();
     
-    private final AtomicInteger successfulRequests = new AtomicInteger(0);
+    private final LongAdder successfulRequests = new LongAdder();
    
-    private final AtomicInteger failedRequests = new AtomicInteger(0);
+    private final LongAdder failedRequests = new LongAdder();
+    
+    private final LongAdder logsWritten = new LongAdder();
+    
+    private final LongAdder logsDropped = new LongAdder(); // descartados con la cola del log llena
+    
+    // profundidad de la cola de AsyncLogService, la registra el propio servicio al arrancar
+    private volatile IntSupplier logQueueDepth = () -> 0;
+    private volatile int logQueueCapacity;
+    
+    private final LongAdder totalResponseNanos = new LongAdder();
     
-    private final AtomicInteger logsWritten = new AtomicInteger(0);
+    private final LongAdder timedRequests = new LongAdder(); // peticiones con tiempo sumado, el divisor del promedio
     
-    private final AtomicLong totalResponseTime = new AtomicLong(0);
+    // contadores e histograma de latencias por ruta (metodo + patron del servlet): las rutas son las del web.xml/anotaciones, no crecen sin limite
+    private final Map<String, RouteStatistics> routes = new ConcurrentHashMap<>();
+    private final long origin = System.nanoTime(); // los histogramas cuentan sus intervalos de 10 s desde aqui
     
     
     public void incrementTotalRequests() {
-        totalRequests.incrementAndGet();
+        totalRequests.increment();
     }
     
    
     public void incrementSuccessfulRequests() {
-        successfulRequests.incrementAndGet();
+        successfulRequests.increment();
     }
    
     public void incrementFailedRequests() {
-        failedRequests.incrementAndGet();
+        failedRequests.increment();
     }
     
    
     public void incrementLogsWritten() {
-        logsWritten.incrementAndGet();
+        logsWritten.increment();
+    }
+    
+    public void addLogsWritten(long count) { // el escritor de logs cuenta por lotes, una vez por flush
+        logsWritten.add(count);
+    }
+    
+    public void incrementLogsDropped() {
+        logsDropped.increment();
+    }
+    
+    public void registerLogQueue(IntSupplier depth, int capacity) {
+        logQueueDepth = depth;
+        logQueueCapacity = capacity;
     }
     
     
     public void addResponseTime(long milliseconds) {
-        totalResponseTime.addAndGet(milliseconds);
+        addResponseNanos(milliseconds * 1_000_000L);
+    }
+    
+    // peticion terminada con su estado y su tiempo medido con System.nanoTime(): suma al promedio, a los contadores y al histograma de su ruta
+    public void recordResponseTime(String route, int status, long nanos) {
+        addResponseNanos(nanos);
+        long now = System.nanoTime() - origin;
+        routes.computeIfAbsent(route, r -> new RouteStatistics(now)).record(status, nanos, now);
+    }
+    
+    private void addResponseNanos(long nanos) {
+        totalResponseNanos.add(nanos);
+        timedRequests.increment(); // despues del tiempo: quien ve este contador ve tambien su tiempo
     }
     
     
-    public int getTotalRequests() {
-        return totalRequests.get();
+    public long getTotalRequests() {
+        return totalRequests.sum();
     }
     
   
-    public int getSuccessfulRequests() {
-        return successfulRequests.get();
+    public long getSuccessfulRequests() {
+        return successfulRequests.sum();
     }
     
   
-    public int getFailedRequests() {
-        return failedRequests.get();
+    public long getFailedRequests() {
+        return failedRequests.sum();
     }
     
     
-    public int getLogsWritten() {
-        return logsWritten.get();
+    public long getLogsWritten() {
+        return logsWritten.sum();
+    }
+    
+    public long getLogsDropped() {
+        return logsDropped.sum();
+    }
+    
+    public int getLogQueueDepth() {
+        return logQueueDepth.getAsInt();
     }
     
    
     public double getAverageResponseTime() {
-        int total = totalRequests.get();
-        if (total == 0) {
-            return 0.0;
-        }
-        return (double) totalResponseTime.get() / total;
+        return average(timedRequests.sum(), totalResponseNanos.sum());
+    }
+    
+    private static double average(long count, long nanos) { // en ms, con decimales para las peticiones de menos de 1 ms
+        return count == 0 ? 0.0 : nanos / 1_000_000.0 / count;
     }
     
     
     public void reset() {
-        totalRequests.set(0);
-        successfulRequests.set(0);
-        failedRequests.set(0);
-        logsWritten.set(0);
-        totalResponseTime.set(0);
+        totalRequests.reset();
+        successfulRequests.reset();
+        failedRequests.reset();
+        logsWritten.reset();
+        logsDropped.reset();
+        totalResponseNanos.reset();
+        timedRequests.reset();
+        routes.clear();
     }
     
  // excportar estadisiticas a un archivo con hilo creado con lambda 
@@ -130,6 +191,7 @@ public class ApiStatistics { // clase que encapsula las estadisticas de la api y
                 writer.write("OK: " + summary.getSuccessfulRequests() + "\n");
                 writer.write("Errores: " + summary.getFailedRequests() + "\n");
                 writer.write("Logs: " + summary.getLogsWritten() + "\n");
+                writer.write("Logs descartados: " + summary.getLogsDropped() + "\n");
                 writer.write("Promedio respuesta: " + summary.getAverageResponseTime() + " ms\n");
             } catch (IOException e) {
                 System.err.println("No se pudo exportar las estadísticas: " + e.getMessage());
@@ -140,40 +202,209 @@ public class ApiStatistics { // clase que encapsula las estadisticas de la api y
     }
     
     // encapsula las stats como un snapshot en un momnento dado
+    // sin locks: se lee en orden inverso a las escrituras, asi cada suma ve al menos lo que ya contaron las que se leen antes
+    // y el snapshot cumple tiempos <= ok + errores <= total aunque haya peticiones en curso
     public StatisticsSummary getSummary() {
+        long timed = timedRequests.sum();
+        long responseNanos = totalResponseNanos.sum();
+        long failed = failedRequests.sum();
+        long successful = successfulRequests.sum();
+        long total = totalRequests.sum();
         return new StatisticsSummary(
-            totalRequests.get(),
-            successfulRequests.get(),
-            failedRequests.get(),
-            logsWritten.get(),
-            getAverageResponseTime()
+            total,
+            successful,
+            failed,
+            logsWritten.sum(),
+            logsDropped.sum(),
+            logQueueDepth.getAsInt(),
+            average(timed, responseNanos)
         );
     }
     
     
+    // percentiles por ruta en el ultimo minuto, los ultimos 5 minutos y desde el arranque, ordenados por ruta
+    public List<EndpointLatencySummary> getLatencySummaries() {
+        long now = System.nanoTime() - origin;
+        List<EndpointLatencySummary> summaries = new ArrayList<>();
+        for (Map.Entry<String, RouteStatistics> entry : routes.entrySet()) {
+            LatencySummary[] windows = entry.getValue().getLatency().summarize(now);
+            summaries.add(new EndpointLatencySummary(entry.getKey(), windows[0], windows[1], windows[2]));
+        }
+        summaries.sort((a, b) -> a.getRoute().compareTo(b.getRoute()));
+        return summaries;
+    }
+    
+    
+    // limites de los cubos del histograma de /api/metrics, en segundos como pide Prometheus
+    private static final double[] LATENCY_BUCKETS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+    private static final long[] LATENCY_BUCKETS_NANOS = new long[LATENCY_BUCKETS.length];
+    private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx" };
+    
+    static {
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            LATENCY_BUCKETS_NANOS[i] = (long) (LATENCY_BUCKETS[i] * 1_000_000_000L);
+        }
+    }
+    
+    // contadores globales, peticiones por ruta y clase de estado e histograma de latencias por ruta en formato OpenMetrics
+    public void writeOpenMetrics(OpenMetricsWriter out) {
+        StatisticsSummary summary = getSummary();
+        out.family("crm_http_requests_started", "counter", "Peticiones recibidas en /api, incluidas las que siguen en curso")
+            .sample("crm_http_requests_started_total", summary.getTotalRequests());
+        out.family("crm_logs_written", "counter", "Entradas escritas en application.log")
+            .sample("crm_logs_written_total", summary.getLogsWritten());
+        out.family("crm_logs_dropped", "counter", "Entradas de log descartadas con la cola llena")
+            .sample("crm_logs_dropped_total", summary.getLogsDropped());
+        out.family("crm_async_log_queue_depth", "gauge", "Entradas de log pendientes de escribir")
+            .sample("crm_async_log_queue_depth", summary.getLogQueueDepth());
+        out.family("crm_async_log_queue_capacity", "gauge", "Capacidad de la cola del log")
+            .sample("crm_async_log_queue_capacity", logQueueCapacity);
+        
+        out.family("crm_http_requests", "counter", "Peticiones terminadas por ruta y clase de estado HTTP");
+        for (Map.Entry<String, RouteStatistics> entry : routes.entrySet()) {
+            for (int statusClass = 1; statusClass <= STATUS_CLASSES.length; statusClass++) {
+                long requests = entry.getValue().getRequests(statusClass);
+                if (requests > 0) {
+                    out.sample("crm_http_requests_total", "route", entry.getKey(), "status", STATUS_CLASSES[statusClass - 1], requests);
+                }
+            }
+        }
+        
+        long now = System.nanoTime() - origin;
+        long[] counts = new long[LATENCY_BUCKETS.length];
+        out.family("crm_http_request_duration_seconds", "histogram", "Latencia de las peticiones por ruta desde el arranque");
+        for (Map.Entry<String, RouteStatistics> entry : routes.entrySet()) {
+            String route = entry.getKey();
+            long count = entry.getValue().getLatency().cumulativeBuckets(now, LATENCY_BUCKETS_NANOS, counts);
+            for (int i = 0; i < counts.length; i++) {
+                out.bucket("crm_http_request_duration_seconds", "route", route, LATENCY_BUCKETS[i], counts[i]);
+            }
+            out.bucket("crm_http_request_duration_seconds", "route", route, Double.POSITIVE_INFINITY, count);
+            out.sample("crm_http_request_duration_seconds_count", "route", route, count);
+            out.sample("crm_http_request_duration_seconds_sum", "route", route, entry.getValue().getTotalNanos() / 1_000_000_000.0);
+        }
+    }
+    
+    
+    // aciertos y fallos de la cache de segundo nivel por region (los cuenta Hibernate con hibernate.generate_statistics)
+    public List<CacheRegionSummary> getCacheSummaries() {
+        Statistics statistics = EntityManagerProducer.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        List<CacheRegionSummary> summaries = new ArrayList<>();
+        String[] regions = { CacheRegions.SECCIONES, CacheRegions.PRODUCTOS, CacheRegions.COMERCIALES, CacheRegions.CONSULTAS_CATALOGO };
+        for (String region : regions) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics == null) {
+                continue;
+            }
+            summaries.add(new CacheRegionSummary(region,
+                regionStatistics.getHitCount(),
+                regionStatistics.getMissCount(),
+                regionStatistics.getPutCount()));
+        }
+        return summaries;
+    }
+    
+    
+    public static class CacheRegionSummary {
+        private final String region;
+        private final long hits;
+        private final long misses;
+        private final long puts;
+        
+        public CacheRegionSummary(String region, long hits, long misses, long puts) {
+            this.region = region;
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+        }
+        
+        // Getters
+        public String getRegion() { return region; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getPuts() { return puts; }
+        public double getHitRatio() { return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses); }
+    }
+    
+    
+    public static class EndpointLatencySummary {
+        private final String route;
+        private final LatencySummary lastMinute;
+        private final LatencySummary lastFiveMinutes;
+        private final LatencySummary cumulative;
+        
+        public EndpointLatencySummary(String route, LatencySummary lastMinute, LatencySummary lastFiveMinutes, LatencySummary cumulative) {
+            this.route = route;
+            this.lastMinute = lastMinute;
+            this.lastFiveMinutes = lastFiveMinutes;
+            this.cumulative = cumulative;
+        }
+        
+        // Getters
+        public String getRoute() { return route; }
+        public LatencySummary getLastMinute() { return lastMinute; }
+        public LatencySummary getLastFiveMinutes() { return lastFiveMinutes; }
+        public LatencySummary getCumulative() { return cumulative; }
+    }
+    
+    
+    public static class LatencySummary { // valores en nanosegundos
+        private final long count;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+        
+        public LatencySummary(long count, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+        
+        // Getters
+        public long getCount() { return count; }
+        public long getP50() { return p50; }
+        public long getP90() { return p90; }
+        public long getP99() { return p99; }
+        public long getP999() { return p999; }
+        public long getMax() { return max; }
+    }
+    
+    
     public static class StatisticsSummary {
-        private final int totalRequests;
-        private final int successfulRequests;
-        private final int failedRequests;
-        private final int logsWritten;
+        private final long totalRequests;
+        private final long successfulRequests;
+        private final long failedRequests;
+        private final long logsWritten;
+        private final long logsDropped;
+        private final int logQueueDepth;
         private final double averageResponseTime;
         
         public StatisticsSummary(
-        int totalRequests, int successfulRequests, 
-         int failedRequests, int logsWritten, 
+        long totalRequests, long successfulRequests, 
+         long failedRequests, long logsWritten, 
+         long logsDropped, int logQueueDepth,
          double averageResponseTime) {
             this.totalRequests = totalRequests;
             this.successfulRequests = successfulRequests;
             this.failedRequests = failedRequests;
             this.logsWritten = logsWritten;
+            this.logsDropped = logsDropped;
+            this.logQueueDepth = logQueueDepth;
             this.averageResponseTime = averageResponseTime;
         }
         
         // Getters
-        public int getTotalRequests() { return totalRequests; }
-        public int getSuccessfulRequests() { return successfulRequests; }
-        public int getFailedRequests() { return failedRequests; }
-        public int getLogsWritten() { return logsWritten; }
+        public long getTotalRequests() { return totalRequests; }
+        public long getSuccessfulRequests() { return successfulRequests; }
+        public long getFailedRequests() { return failedRequests; }
+        public long getLogsWritten() { return logsWritten; }
+        public long getLogsDropped() { return logsDropped; }
+        public int getLogQueueDepth() { return logQueueDepth; }
         public double getAverageResponseTime() { return averageResponseTime; }
     }
 }
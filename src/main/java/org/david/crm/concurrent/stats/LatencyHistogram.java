@@ -0,0 +1,111 @@
+package org.david.crm.concurrent.stats;
+
+import org.HdrHistogram.AbstractHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntCountsHistogram;
+import org.HdrHistogram.Recorder;
+
+// histograma de latencias de una ruta en nanosegundos (HdrHistogram). Los hilos de las peticiones escriben en un Recorder
+// sin locks; cada 10 s (al primer registro o lectura del intervalo siguiente) se vuelca a los anillos de ventanas:
+//  - ticks: los ultimos 6 intervalos de 10 s -> ultimo minuto
+//  - minutes: los ultimos 5 minutos (el actual a medias) -> ultimos 5 minutos
+//  - cumulative: todo desde el arranque o el ultimo reset
+// Las ventanas avanzan de 10 s en 10 s y de minuto en minuto: son aproximadas a esa granularidad
+class LatencyHistogram {
+    
+    static final long TICK_NANOS = 10_000_000_000L;
+    private static final int TICKS_PER_MINUTE = 6;
+    private static final int MINUTES = 5;
+    
+    // 1 µs de resolucion hasta 60 s con 2 digitos significativos (error < 1%): ~11 KB por histograma de int
+    private static final long LOWEST = 1_000;
+    private static final long HIGHEST = 60_000_000_000L;
+    private static final int DIGITS = 2;
+    
+    private final Recorder recorder = new Recorder(LOWEST, HIGHEST, DIGITS);
+    private final AbstractHistogram[] ticks = new AbstractHistogram[TICKS_PER_MINUTE];
+    private final AbstractHistogram[] minutes = new AbstractHistogram[MINUTES];
+    private final Histogram cumulative = new Histogram(LOWEST, HIGHEST, DIGITS); // de long, no se vacia nunca
+    private Histogram interval; // se recicla en cada volcado del Recorder
+    
+    private volatile long tick; // intervalo de 10 s al que pertenece lo que hay ahora en el Recorder
+    
+    LatencyHistogram(long now) {
+        for (int i = 0; i < ticks.length; i++) {
+            ticks[i] = new IntCountsHistogram(LOWEST, HIGHEST, DIGITS);
+        }
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = new IntCountsHistogram(LOWEST, HIGHEST, DIGITS);
+        }
+        tick = now / TICK_NANOS;
+    }
+    
+    // now: nanos desde el origen de ApiStatistics (nunca negativo)
+    void record(long nanos, long now) {
+        if (now / TICK_NANOS != tick) {
+            roll(now / TICK_NANOS);
+        }
+        recorder.recordValue(Math.min(Math.max(nanos, 0), HIGHEST));
+    }
+    
+    // vuelca el Recorder al intervalo en curso y avanza los anillos hasta nowTick, vaciando los huecos que quedan atras
+    private synchronized void roll(long nowTick) {
+        interval = recorder.getIntervalHistogram(interval);
+        ticks[(int) (tick % TICKS_PER_MINUTE)].add(interval);
+        minutes[(int) (tick / TICKS_PER_MINUTE % MINUTES)].add(interval);
+        cumulative.add(interval);
+        if (nowTick - tick >= (long) TICKS_PER_MINUTE * MINUTES) { // mas de 5 minutos sin trafico: todas las ventanas vacias
+            for (AbstractHistogram histogram : ticks) {
+                histogram.reset();
+            }
+            for (AbstractHistogram histogram : minutes) {
+                histogram.reset();
+            }
+            tick = nowTick;
+            return;
+        }
+        while (tick < nowTick) {
+            long next = tick + 1;
+            ticks[(int) (next % TICKS_PER_MINUTE)].reset();
+            if (next % TICKS_PER_MINUTE == 0) {
+                minutes[(int) (next / TICKS_PER_MINUTE % MINUTES)].reset();
+            }
+            tick = next;
+        }
+    }
+    
+    synchronized ApiStatistics.LatencySummary[] summarize(long now) {
+        roll(Math.max(tick, now / TICK_NANOS));
+        Histogram lastMinute = new Histogram(LOWEST, HIGHEST, DIGITS);
+        for (AbstractHistogram histogram : ticks) {
+            lastMinute.add(histogram);
+        }
+        Histogram lastFiveMinutes = new Histogram(LOWEST, HIGHEST, DIGITS);
+        for (AbstractHistogram histogram : minutes) {
+            lastFiveMinutes.add(histogram);
+        }
+        return new ApiStatistics.LatencySummary[] { summary(lastMinute), summary(lastFiveMinutes), summary(cumulative) };
+    }
+    
+    // peticiones acumuladas con latencia <= cada limite (nanos, ascendentes) en counts; devuelve el total. Para los histogramas de /api/metrics
+    synchronized long cumulativeBuckets(long now, long[] boundsNanos, long[] counts) {
+        roll(Math.max(tick, now / TICK_NANOS));
+        for (int i = 0; i < boundsNanos.length; i++) {
+            counts[i] = cumulative.getCountBetweenValues(0, boundsNanos[i]);
+        }
+        return cumulative.getTotalCount();
+    }
+    
+    private static ApiStatistics.LatencySummary summary(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) { // vacio, getMaxValue() devolveria el limite del primer cubo
+            return new ApiStatistics.LatencySummary(0, 0, 0, 0, 0, 0);
+        }
+        return new ApiStatistics.LatencySummary(
+            histogram.getTotalCount(),
+            histogram.getValueAtPercentile(50),
+            histogram.getValueAtPercentile(90),
+            histogram.getValueAtPercentile(99),
+            histogram.getValueAtPercentile(99.9),
+            histogram.getMaxValue());
+    }
+}
@@ -0,0 +1,37 @@
+package org.david.crm.concurrent.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// lo que se guarda de cada ruta: peticiones por clase de estado (1xx..5xx), suma de tiempos y el histograma de latencias
+class RouteStatistics {
+    
+    private final LongAdder[] statusClasses = new LongAdder[5];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LatencyHistogram latency;
+    
+    RouteStatistics(long now) {
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new LongAdder();
+        }
+        latency = new LatencyHistogram(now);
+    }
+    
+    void record(int status, long nanos, long now) {
+        int statusClass = status / 100 - 1;
+        statusClasses[statusClass >= 0 && statusClass < statusClasses.length ? statusClass : 4].increment(); // fuera de rango cuenta como 5xx
+        totalNanos.add(nanos);
+        latency.record(nanos, now);
+    }
+    
+    long getRequests(int statusClass) { // statusClass de 1 a 5
+        return statusClasses[statusClass - 1].sum();
+    }
+    
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+    
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+}
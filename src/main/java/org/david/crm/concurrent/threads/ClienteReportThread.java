@@ -1,13 +1,15 @@
 package org.david.crm.concurrent.threads;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDateTime;
-import java.util.List;
 
-import org.david.crm.model.Cliente;
+import org.david.crm.concurrent.ReportWriter;
+import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.repository.ClienteRepository;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+
 
 public class ClienteReportThread extends Thread { // obtiene los clientes de la base de datos y los escribe en un archivo
     
@@ -21,27 +23,38 @@ public class ClienteReportThread extends Thread { // obtiene los clientes de la
         setDaemon(true); // no bloquea el apagado de la aplicación
     }
     
+    // el hilo no pasa por el TransactionFilter: abre su propio EntityManager (solo lectura) y lo deja en el ThreadLocal
+    // para el repositorio. Los clientes se leen con el cursor y se escriben segun llegan, sin cargar la tabla entera
     @Override
     public void run() {
+        EntityManager em = null;
         try {
-            List<Cliente> clientes = clienteRepository.findAll();
-            try (FileWriter writer = new FileWriter(outputFile)) {
-                writer.write("=== INFORME (Thread dedicado) ===\n");
-                writer.write("Fecha: " + LocalDateTime.now() + "\n\n");
-                writer.write("Total de clientes: " + clientes.size() + "\n\n");
-                for (Cliente cliente : clientes) {
-                    writer.write(
-                        String.format("%d - %s (%s)\n",
-                            cliente.getClienteId(),
-                            cliente.getNombre(),
-                            cliente.getEmail())
-                    );
-                }
+            em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
+            EntityManagerProducer.setEntityManager(em);
+            EntityManagerProducer.configureReadOnly(em);
+            EntityTransaction tx = em.getTransaction();
+            tx.begin();
+            
+            long totalClientes = clienteRepository.count();
+            try (ReportWriter writer = new ReportWriter(outputFile)) {
+                writer.append("=== INFORME (Thread dedicado) ===").newLine();
+                writer.append("Fecha: ").append(LocalDateTime.now()).newLine().newLine();
+                writer.append("Total de clientes: ").append(totalClientes).newLine().newLine();
+                writer.writeRows(em, clienteRepository.streamAll(), (out, cliente) -> out
+                    .append(cliente.getClienteId()).append(" - ").append(cliente.getNombre())
+                    .append(" (").append(cliente.getEmail()).append(')'), filas -> { });
             }
+            tx.commit();
             System.out.println("Informe generado por hilo dedicado: " + outputFile);
-        } catch (IOException e) {
+        } catch (IOException | RuntimeException e) { // antes solo se capturaba IOException y el hilo moria sin decir nada
             System.err.println("Error en ClienteReportThread: " + e.getMessage());
+            if (em != null && em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+        } finally {
+            if (em != null) {
+                EntityManagerProducer.removeEntityManager();
+            }
         }
     }
 }
-
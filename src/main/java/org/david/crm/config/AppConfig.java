@@ -0,0 +1,59 @@
+package org.david.crm.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+public final class AppConfig { // configuracion de la aplicacion: crm.properties del classpath, sobreescribible con -Dclave=valor
+    
+    private static final String CONFIG_FILE = "crm.properties";
+    private static final Properties properties = new Properties();
+    
+    static {
+        try (InputStream in = AppConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                properties.load(in);
+            } else {
+                System.err.println("[AppConfig] ⚠ No se encontró " + CONFIG_FILE + ", se usan valores por defecto");
+            }
+        } catch (IOException e) {
+            System.err.println("[AppConfig] ✗ Error al leer " + CONFIG_FILE + ": " + e.getMessage());
+        }
+    }
+    
+    private AppConfig() {
+    }
+    
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key); // las propiedades del sistema tienen prioridad sobre el fichero
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+    
+    public static int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("[AppConfig] ⚠ Valor inválido para " + key + ": " + value + ", se usa " + defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    public static long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("[AppConfig] ⚠ Valor inválido para " + key + ": " + value + ", se usa " + defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -0,0 +1,97 @@
+package org.david.crm.config;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+
+public final class CacheRegions { // regiones de la cache de segundo nivel (Caffeine en memoria via JCache)
+    
+    public static final String SECCIONES = "catalogoSecciones";
+    public static final String PRODUCTOS = "catalogoProductos";
+    public static final String COMERCIALES = "comerciales";
+    public static final String CONSULTAS_CATALOGO = "catalogoConsultas"; // resultados de findAll/findBySeccionId del catalogo
+    
+    // regiones internas de Hibernate: la de timestamps invalida las consultas cacheadas cuando cambia una tabla,
+    // nunca debe expirar antes que las consultas que protege
+    private static final String UPDATE_TIMESTAMPS = "default-update-timestamps-region";
+    private static final String DEFAULT_QUERY_RESULTS = "default-query-results-region";
+    
+    private CacheRegions() {
+    }
+    
+    // tamaño y TTL de cada region salen de crm.properties
+    static CacheManager createCacheManager() {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager();
+        long catalogoTtl = AppConfig.getLong("cache.catalogo.ttlSeconds", 600);
+        long catalogoSize = AppConfig.getLong("cache.catalogo.maxEntries", 10000);
+        createRegion(cacheManager, SECCIONES, catalogoTtl, catalogoSize);
+        createRegion(cacheManager, PRODUCTOS, catalogoTtl, catalogoSize);
+        createRegion(cacheManager, COMERCIALES,
+            AppConfig.getLong("cache.comerciales.ttlSeconds", 300), AppConfig.getLong("cache.comerciales.maxEntries", 1000));
+        long consultasTtl = AppConfig.getLong("cache.consultas.ttlSeconds", 600);
+        long consultasSize = AppConfig.getLong("cache.consultas.maxEntries", 500);
+        createRegion(cacheManager, CONSULTAS_CATALOGO, consultasTtl, consultasSize);
+        createRegion(cacheManager, DEFAULT_QUERY_RESULTS, consultasTtl, consultasSize);
+        createRegion(cacheManager, UPDATE_TIMESTAMPS, 0, 0);
+        return cacheManager;
+    }
+    
+    private static void createRegion(CacheManager cacheManager, String name, long ttlSeconds, long maxEntries) {
+        if (cacheManager.getCache(name) != null) {
+            return; // ya creada (redeploy en caliente con el mismo CachingProvider)
+        }
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (ttlSeconds > 0) {
+            configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        }
+        if (maxEntries > 0) {
+            configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        }
+        cacheManager.createCache(name, configuration);
+    }
+    
+    // invalidacion por region tras escribir en el catalogo. Hace falta ademas de la invalidacion propia de Hibernate porque
+    // borrar una seccion pone a NULL productos.seccion_id con ON DELETE SET NULL, un cambio que Hibernate no ve.
+    // Se hace al confirmar la transaccion: antes, otra peticion podria volver a cachear los datos viejos
+    public static void evictCatalogoAfterCommit(EntityManager em) {
+        EntityManagerFactory emf = em.getEntityManagerFactory();
+        Transaction transaction = em.unwrap(Session.class).getTransaction();
+        if (!transaction.isActive()) {
+            evictCatalogo(emf);
+            return;
+        }
+        transaction.registerSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    evictCatalogo(emf);
+                }
+            }
+        });
+    }
+    
+    public static void evictCatalogo(EntityManagerFactory emf) {
+        org.hibernate.Cache cache = emf.unwrap(SessionFactory.class).getCache();
+        cache.evictRegion(PRODUCTOS);
+        cache.evictRegion(SECCIONES);
+        cache.evictQueryRegion(CONSULTAS_CATALOGO);
+    }
+}
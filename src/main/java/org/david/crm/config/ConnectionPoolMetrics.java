@@ -0,0 +1,90 @@
+package org.david.crm.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+public class ConnectionPoolMetrics implements MetricsTrackerFactory { // recoge las metricas que HikariCP publica sobre el pool
+    
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    
+    private volatile PoolStats poolStats; // la rellena Hikari al arrancar el pool
+    
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) { // tiempo que un hilo espero para obtener conexion
+                acquireCount.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+            
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+    
+    public PoolSnapshot getSnapshot() {
+        PoolStats stats = poolStats;
+        long count = acquireCount.sum();
+        double avgAcquireMs = count == 0 ? 0.0 : acquireNanos.sum() / (double) count / 1_000_000.0;
+        return new PoolSnapshot(
+            stats != null ? stats.getActiveConnections() : 0,
+            stats != null ? stats.getIdleConnections() : 0,
+            stats != null ? stats.getTotalConnections() : 0,
+            stats != null ? stats.getPendingThreads() : 0,
+            stats != null ? stats.getMaxConnections() : 0,
+            count,
+            avgAcquireMs,
+            maxAcquireNanos.get() / 1_000_000.0,
+            timeouts.sum()
+        );
+    }
+    
+    
+    public static class PoolSnapshot {
+        private final int active;
+        private final int idle;
+        private final int total;
+        private final int waiting;
+        private final int maxSize;
+        private final long acquired;
+        private final double averageAcquireMs;
+        private final double maxAcquireMs;
+        private final long timeouts;
+        
+        public PoolSnapshot(int active, int idle, int total, int waiting, int maxSize,
+                long acquired, double averageAcquireMs, double maxAcquireMs, long timeouts) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.waiting = waiting;
+            this.maxSize = maxSize;
+            this.acquired = acquired;
+            this.averageAcquireMs = averageAcquireMs;
+            this.maxAcquireMs = maxAcquireMs;
+            this.timeouts = timeouts;
+        }
+        
+        // Getters
+        public int getActive() { return active; }
+        public int getIdle() { return idle; }
+        public int getTotal() { return total; }
+        public int getWaiting() { return waiting; }
+        public int getMaxSize() { return maxSize; }
+        public long getAcquired() { return acquired; }
+        public double getAverageAcquireMs() { return averageAcquireMs; }
+        public double getMaxAcquireMs() { return maxAcquireMs; }
+        public long getTimeouts() { return timeouts; }
+    }
+}
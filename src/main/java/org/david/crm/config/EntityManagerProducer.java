@@ -1,37 +1,110 @@
 package org.david.crm.config;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
 import jakarta.enterprise.inject.Produces;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
 import jakarta.persistence.Persistence;
 
 public class EntityManagerProducer { // produce un entity manager por hilo
     
     private static final String PERSISTENCE_UNIT_NAME = "crmPU";
+    private static final ConnectionPoolMetrics poolMetrics = new ConnectionPoolMetrics();
+    private static final HikariDataSource dataSource; // pool de conexiones compartido por peticiones e informes
     private static final EntityManagerFactory emf; // singleton XD compartido por toda la aplicacion
     private static final ThreadLocal<EntityManager> emThreadLocal = new ThreadLocal<>();
     
+    // ámbito perezoso de la peticion: el filtro solo marca que hay peticion (y si es de solo lectura);
+    // el EntityManager y la transaccion se crean la primera vez que un repositorio los pide
+    private static final ThreadLocal<Boolean> lazyScopeReadOnly = new ThreadLocal<>();
+    
+    // lo que recibe quien hace @Inject EntityManager: delega en el EntityManager del hilo actual en cada llamada,
+    // asi un bean @ApplicationScoped no se queda con el de la primera peticion y la transaccion sigue siendo perezosa
+    private static final EntityManager currentEntityManagerHandle = (EntityManager) Proxy.newProxyInstance(
+        EntityManager.class.getClassLoader(),
+        new Class<?>[] { EntityManager.class },
+        (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals": return proxy == args[0];
+                    case "hashCode": return System.identityHashCode(proxy);
+                    default: return "EntityManager del hilo actual";
+                }
+            }
+            EntityManager em = getCurrentEntityManager();
+            if (em == null || !em.isOpen()) {
+                throw new IllegalStateException("EntityManager no está disponible. El TransactionFilter debe ejecutarse primero.");
+            }
+            try {
+                return method.invoke(em, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    
     static {
-        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME);
+        dataSource = createDataSource();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("jakarta.persistence.nonJtaDataSource", dataSource); // Hibernate usa el pool en lugar del suyo interno (no apto para produccion)
+        properties.put("hibernate.javax.cache.cache_manager", CacheRegions.createCacheManager()); // regiones de la cache de segundo nivel ya configuradas
+        emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, properties);
+    }
+    
+    private static HikariDataSource createDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("crmPool");
+        config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        config.setJdbcUrl(AppConfig.get("db.url", "jdbc:mysql://localhost:3306/crudProject"));
+        config.setUsername(AppConfig.get("db.user", "root"));
+        config.setPassword(AppConfig.get("db.password", ""));
+        config.setMaximumPoolSize(AppConfig.getInt("db.pool.maxSize", 20));
+        config.setMinimumIdle(AppConfig.getInt("db.pool.minIdle", 5));
+        config.setConnectionTimeout(AppConfig.getLong("db.pool.connectionTimeoutMs", 5000));
+        config.setValidationTimeout(AppConfig.getLong("db.pool.validationTimeoutMs", 2000));
+        config.setLeakDetectionThreshold(AppConfig.getLong("db.pool.leakDetectionThresholdMs", 10000));
+        config.setIdleTimeout(AppConfig.getLong("db.pool.idleTimeoutMs", 600000));
+        config.setMaxLifetime(AppConfig.getLong("db.pool.maxLifetimeMs", 1800000));
+        config.setAutoCommit(false); // Hibernate siempre trabaja dentro de transacciones, evita el SET autocommit en cada checkout
+        // cache de sentencias preparadas en el driver
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.setMetricsTrackerFactory(poolMetrics);
+        System.out.println("[EntityManagerProducer] Pool de conexiones: máximo " + config.getMaximumPoolSize() + " conexiones");
+        return new HikariDataSource(config);
     }
     
     @Produces
     public EntityManager createEntityManager() { 
-
-        
-        EntityManager em = emThreadLocal.get(); 
-        if (em != null && em.isOpen()) {
-            return em; // si el entity manager ya existe lo devuelve
-        }
-
-        em = emf.createEntityManager();
-        emThreadLocal.set(em);
-        return em; // si no existelo crea y lo devuelve
+        return currentEntityManagerHandle;
     }
     
 
     public static EntityManager getCurrentEntityManager() {
-        return emThreadLocal.get();
+        EntityManager em = emThreadLocal.get();
+        if (em == null) {
+            Boolean readOnly = lazyScopeReadOnly.get();
+            if (readOnly != null) { // primer uso dentro de una peticion: ahora si se abre sesion y transaccion
+                em = emf.createEntityManager();
+                if (readOnly) {
+                    configureReadOnly(em);
+                }
+                em.getTransaction().begin();
+                emThreadLocal.set(em);
+            }
+        }
+        return em;
     }
     
     public static void setEntityManager(EntityManager em) {
@@ -50,8 +123,74 @@ public class EntityManagerProducer { // produce un entity manager por hilo
         emThreadLocal.remove();
     }
     
+    // peticiones que nunca llegan a un repositorio (401, 429, estadisticas, informes...) no tocan el pool
+    public static void openLazyScope(boolean readOnly) {
+        lazyScopeReadOnly.set(readOnly);
+    }
+    
+    // confirma la transaccion si la peticion llego a usar la base de datos; si quedo marcada rollback-only se deshace
+    public static void commitLazyScope() {
+        EntityManager em = emThreadLocal.get();
+        if (em == null || !em.isOpen()) {
+            return;
+        }
+        EntityTransaction transaction = em.getTransaction();
+        if (transaction.isActive()) {
+            if (transaction.getRollbackOnly()) {
+                transaction.rollback();
+            } else {
+                transaction.commit();
+            }
+        }
+    }
+    
+    public static void rollbackLazyScope() {
+        EntityManager em = emThreadLocal.get();
+        if (em == null || !em.isOpen()) {
+            return;
+        }
+        EntityTransaction transaction = em.getTransaction();
+        if (transaction.isActive()) {
+            try {
+                transaction.rollback();
+            } catch (Exception rollbackEx) {
+                // Ignorar errores de rollback
+            }
+        }
+    }
+    
+    // para errores que el servlet responde el mismo (sin lanzar excepcion) pero que no deben confirmar lo ya escrito
+    public static void markRollbackOnly() {
+        EntityManager em = emThreadLocal.get();
+        if (em != null && em.isOpen() && em.getTransaction().isActive()) {
+            em.getTransaction().setRollbackOnly();
+        }
+    }
+    
+    public static void closeLazyScope() {
+        lazyScopeReadOnly.remove();
+        removeEntityManager();
+    }
+    
+    // modo solo lectura: sin flush automatico, entidades sin snapshot para dirty-checking y conexion JDBC readOnly
+    // (MySQL no reserva recursos de escritura y el dia de mañana permitiria enrutar a una replica).
+    // Llamar antes de begin(); el pool restaura readOnly=false al devolver la conexion
+    public static void configureReadOnly(EntityManager em) {
+        Session session = em.unwrap(Session.class);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        session.setDefaultReadOnly(true);
+        session.doWork(connection -> connection.setReadOnly(true));
+    }
+    
     public static EntityManagerFactory getEntityManagerFactory() {
         return emf;
     }
+    
+    public static int getPoolMaxSize() {
+        return dataSource.getMaximumPoolSize();
+    }
+    
+    public static ConnectionPoolMetrics.PoolSnapshot getPoolSnapshot() {
+        return poolMetrics.getSnapshot();
+    }
 }
-
@@ -2,14 +2,22 @@ package org.david.crm.controller;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.stream.Stream;
 
+import org.david.crm.config.EntityManagerProducer;
+import org.david.crm.repository.Repository;
 import org.david.crm.util.JsonUtil;
 
+import jakarta.persistence.EntityManager;
 import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 public abstract class BaseServlet extends HttpServlet { // base para todos los servlets
     
+    protected static final int DEFAULT_PAGE_LIMIT = 50; // tamaño de pagina si no se indica ?limit
+    protected static final int MAX_PAGE_LIMIT = 500; // tope para que una sola pagina no vuelva a cargar la tabla entera
+    
     protected void sendJsonResponse(HttpServletResponse resp, Object data, int status) throws IOException { // respueseta Json y serialaza
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
@@ -20,6 +28,21 @@ public abstract class BaseServlet extends HttpServlet { // base para todos los s
         out.flush();
     }
     
+    // lista grande: se serializa mientras se leen las filas, la memoria no depende del numero de filas.
+    // Devuelve cuantos elementos se enviaron. Una vez empezado ya no se puede responder con un error.
+    // Cada STREAM_FETCH_SIZE filas ya escritas se vacia la sesion de la peticion (tambien lo traido con JOIN FETCH):
+    // tiene que ser lo ultimo que la peticion hace con sus entidades
+    protected long sendJsonStream(HttpServletResponse resp, Stream<?> items, int status) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setStatus(status);
+        
+        EntityManager em = EntityManagerProducer.getCurrentEntityManager(); // la del repositorio que abrio el stream
+        try (items) {
+            return JsonUtil.writeJsonArray(resp.getOutputStream(), items, Repository.STREAM_FETCH_SIZE, em::clear);
+        }
+    }
+    
     protected void sendErrorResponse(HttpServletResponse resp, String message, int status) throws IOException { // error en formato Json
         resp.setContentType("application/json");
         resp.setCharacterEncoding("UTF-8");
@@ -29,5 +52,23 @@ public abstract class BaseServlet extends HttpServlet { // base para todos los s
         out.print("{\"error\": \"" + message + "\"}");
         out.flush();
     }
+    
+    // la paginacion por cursor es opcional: solo se activa si llega ?after o ?limit, sin ellos se devuelve la lista completa como siempre
+    protected boolean isPageRequest(HttpServletRequest req) {
+        return req.getParameter("after") != null || req.getParameter("limit") != null;
+    }
+    
+    protected int getPageLimit(HttpServletRequest req) { // lanza NumberFormatException si ?limit no es un numero
+        String limitStr = req.getParameter("limit");
+        if (limitStr == null || limitStr.isBlank()) {
+            return DEFAULT_PAGE_LIMIT;
+        }
+        int limit = Integer.parseInt(limitStr.trim());
+        return Math.max(1, Math.min(limit, MAX_PAGE_LIMIT));
+    }
+    
+    protected Integer getIntegerCursor(HttpServletRequest req) { // cursor para entidades con id numerico
+        String after = req.getParameter("after");
+        return after == null || after.isBlank() ? null : Integer.valueOf(after.trim());
+    }
 }
-
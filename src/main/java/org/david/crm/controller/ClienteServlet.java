@@ -1,16 +1,18 @@
 package org.david.crm.controller;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.Optional;
 
 import org.david.crm.concurrent.AsyncLogService;
+import org.david.crm.concurrent.LogEvent;
 import org.david.crm.model.Cliente;
+import org.david.crm.repository.Page;
 import org.david.crm.service.ClienteService;
 import org.david.crm.util.JsonUtil;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityExistsException;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -33,23 +35,23 @@ public class ClienteServlet extends BaseServlet {
         Integer userId = (Integer) req.getAttribute("userId");
         
         if (pathInfo == null || pathInfo.equals("/")) {
-            List<Cliente> clientes;
+            if (isPageRequest(req)) {
+                sendPaginaClientes(req, resp, userRole, userId);
+                return;
+            }
             
             // Si es admin, puede ver todos los clientes
             if ("pseudoadmin".equals(userRole)) {
-                clientes = clienteService.findAll();
-                logService.logAsync("GET /api/clientes - Admin: " + clientes.size() + " clientes recuperados");
+                long total = sendJsonStream(resp, clienteService.streamAll(), HttpServletResponse.SC_OK);
+                logService.info("clientes.listados").with("rol", userRole).with("total", total).log();
             } else if ("comercial".equals(userRole)) {
                 // Si es comercial, solo ve sus clientes
-                clientes = clienteService.findByComercialId(userId);
-                logService.logAsync("GET /api/clientes - Comercial ID " + userId + ": " + clientes.size() + " clientes encontrados");
+                long total = sendJsonStream(resp, clienteService.streamByComercialId(userId), HttpServletResponse.SC_OK);
+                logService.info("clientes.listados").with("rol", userRole).with("comercialId", userId).with("total", total).log();
             } else {
                 // Cliente solo puede ver su propia información (no implementado en esta vista)
                 sendErrorResponse(resp, "Acceso denegado", HttpServletResponse.SC_FORBIDDEN);
-                return;
             }
-            
-            sendJsonResponse(resp, clientes, HttpServletResponse.SC_OK);
         } else {
             String idStr = pathInfo.substring(1);
             try {
@@ -66,19 +68,48 @@ public class ClienteServlet extends BaseServlet {
                         }
                     }
                     
-                    logService.logAsync("GET /api/clientes/" + id + " - Cliente recuperado: " + cliente.getNombre());
+                    logService.info("cliente.recuperado").with("id", id).with("nombre", cliente.getNombre()).log();
                     sendJsonResponse(resp, cliente, HttpServletResponse.SC_OK);
                 } else {
-                    logService.logAsync("GET /api/clientes/" + id + " - Cliente no encontrado");
+                    logService.info("cliente.no_encontrado").with("metodo", "GET").with("id", id).log();
                     sendErrorResponse(resp, "Cliente no encontrado", HttpServletResponse.SC_NOT_FOUND);
                 }
             } catch (NumberFormatException e) {
-                logService.logAsync("GET /api/clientes - Error: ID inválido: " + pathInfo);
+                logService.info("cliente.id_invalido").with("metodo", "GET").with("path", pathInfo).log();
                 sendErrorResponse(resp, "ID inválido", HttpServletResponse.SC_BAD_REQUEST);
             }
         }
     }
     
+    private void sendPaginaClientes(HttpServletRequest req, HttpServletResponse resp, String userRole, Integer userId) throws IOException {
+        Integer after;
+        int limit;
+        try {
+            after = getIntegerCursor(req);
+            limit = getPageLimit(req);
+        } catch (NumberFormatException e) {
+            sendErrorResponse(resp, "Parámetros de paginación inválidos", HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        
+        Page<Cliente, Integer> pagina;
+        if ("pseudoadmin".equals(userRole)) {
+            pagina = clienteService.findPage(after, limit);
+        } else if ("comercial".equals(userRole)) {
+            pagina = clienteService.findPageByComercialId(userId, after, limit);
+        } else {
+            sendErrorResponse(resp, "Acceso denegado", HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        
+        LogEvent event = logService.info("clientes.pagina").with("limit", limit).with("total", pagina.getItems().size());
+        if (after != null) {
+            event.with("after", after);
+        }
+        event.log();
+        sendJsonResponse(resp, pagina, HttpServletResponse.SC_OK);
+    }
+    
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String userRole = (String) req.getAttribute("userRole");
@@ -109,10 +140,12 @@ public class ClienteServlet extends BaseServlet {
             }
             
             Cliente saved = clienteService.save(cliente);
-            logService.logAsync("POST /api/clientes - Cliente creado: ID=" + saved.getClienteId() + ", Username=" + saved.getUsername());
+            logService.info("cliente.creado").with("id", saved.getClienteId()).with("username", saved.getUsername()).log();
             sendJsonResponse(resp, saved, HttpServletResponse.SC_CREATED);
+        } catch (EntityExistsException e) {
+            sendErrorResponse(resp, e.getMessage(), HttpServletResponse.SC_CONFLICT);
         } catch (Exception e) {
-            logService.logCriticoAsync("POST /api/clientes - Error al crear cliente: " + e.getMessage());
+            logService.error("cliente.error_crear").with("error", e.getMessage()).log();
             sendErrorResponse(resp, "Error al crear cliente: " + e.getMessage(), 
                 HttpServletResponse.SC_BAD_REQUEST);
         }
@@ -172,17 +205,19 @@ public class ClienteServlet extends BaseServlet {
             
             Optional<Cliente> updated = clienteService.update(id, cliente);
             if (updated.isPresent()) {
-                logService.logAsync("PUT /api/clientes/" + id + " - Cliente actualizado: " + updated.get().getNombre());
+                logService.info("cliente.actualizado").with("id", id).with("nombre", updated.get().getNombre()).log();
                 sendJsonResponse(resp, updated.get(), HttpServletResponse.SC_OK);
             } else {
-                logService.logAsync("PUT /api/clientes/" + id + " - Cliente no encontrado");
+                logService.info("cliente.no_encontrado").with("metodo", "PUT").with("id", id).log();
                 sendErrorResponse(resp, "Cliente no encontrado", HttpServletResponse.SC_NOT_FOUND);
             }
         } catch (NumberFormatException e) {
-            logService.logAsync("PUT /api/clientes - Error: ID inválido: " + pathInfo);
+            logService.info("cliente.id_invalido").with("metodo", "PUT").with("path", pathInfo).log();
             sendErrorResponse(resp, "ID inválido", HttpServletResponse.SC_BAD_REQUEST);
+        } catch (EntityExistsException e) {
+            sendErrorResponse(resp, e.getMessage(), HttpServletResponse.SC_CONFLICT);
         } catch (Exception e) {
-            logService.logCriticoAsync("PUT /api/clientes/" + pathInfo.substring(1) + " - Error al actualizar: " + e.getMessage());
+            logService.error("cliente.error_actualizar").with("path", pathInfo).with("error", e.getMessage()).log();
             sendErrorResponse(resp, "Error al actualizar cliente: " + e.getMessage(), 
                 HttpServletResponse.SC_BAD_REQUEST);
         }
@@ -210,14 +245,14 @@ public class ClienteServlet extends BaseServlet {
             Integer id = Integer.parseInt(idStr);
             boolean deleted = clienteService.deleteById(id);
             if (deleted) {
-                logService.logAsync("DELETE /api/clientes/" + id + " - Cliente eliminado correctamente");
+                logService.info("cliente.eliminado").with("id", id).log();
                 sendJsonResponse(resp, "{\"message\": \"Cliente eliminado\"}", HttpServletResponse.SC_OK);
             } else {
-                logService.logAsync("DELETE /api/clientes/" + id + " - Cliente no encontrado para eliminar");
+                logService.info("cliente.no_encontrado").with("metodo", "DELETE").with("id", id).log();
                 sendErrorResponse(resp, "Cliente no encontrado", HttpServletResponse.SC_NOT_FOUND);
             }
         } catch (NumberFormatException e) {
-            logService.logAsync("DELETE /api/clientes - Error: ID inválido: " + pathInfo);
+            logService.info("cliente.id_invalido").with("metodo", "DELETE").with("path", pathInfo).log();
             sendErrorResponse(resp, "ID inválido", HttpServletResponse.SC_BAD_REQUEST);
         }
     }
@@ -1,23 +1,33 @@
 package org.david.crm.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.persistence.EntityExistsException;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.model.Factura;
+import org.david.crm.repository.Page;
 import org.david.crm.service.FacturaService;
 import org.david.crm.util.JsonUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @WebServlet("/api/facturas/*")
 @ApplicationScoped
 public class FacturaServlet extends BaseServlet {
     
+    private static final int IMPORT_CHUNK_SIZE = 500; // facturas por lote en /batch: una consulta IN por tipo y un flush por lote
+    
     @Inject
     private FacturaService facturaService;
     
@@ -30,14 +40,19 @@ public class FacturaServlet extends BaseServlet {
         String comercialId = req.getParameter("comercialId");
         
         if (pathInfo == null || pathInfo.equals("/")) {
-            List<Factura> facturas;
+            if (isPageRequest(req)) {
+                sendPaginaFacturas(req, resp, userRole, userId, clienteId, comercialId);
+                return;
+            }
+            
+            Stream<Factura> facturas;
             
             // Si es admin, puede ver todas las facturas
             if ("pseudoadmin".equals(userRole)) {
                 if (clienteId != null) {
                     try {
                         Integer id = Integer.parseInt(clienteId);
-                        facturas = facturaService.findByClienteId(id);
+                        facturas = facturaService.streamByClienteId(id);
                     } catch (NumberFormatException e) {
                         sendErrorResponse(resp, "clienteId inválido", HttpServletResponse.SC_BAD_REQUEST);
                         return;
@@ -45,23 +60,23 @@ public class FacturaServlet extends BaseServlet {
                 } else if (comercialId != null) {
                     try {
                         Integer id = Integer.parseInt(comercialId);
-                        facturas = facturaService.findByComercialId(id);
+                        facturas = facturaService.streamByComercialId(id);
                     } catch (NumberFormatException e) {
                         sendErrorResponse(resp, "comercialId inválido", HttpServletResponse.SC_BAD_REQUEST);
                         return;
                     }
                 } else {
-                    facturas = facturaService.findAll();
+                    facturas = facturaService.streamAll();
                 }
             } else if ("comercial".equals(userRole)) {
                 // Si es comercial, solo ve sus facturas
-                facturas = facturaService.findByComercialId(userId);
+                facturas = facturaService.streamByComercialId(userId);
             } else {
                 // Cliente solo puede ver sus propias facturas
-                facturas = facturaService.findByClienteId(userId);
+                facturas = facturaService.streamByClienteId(userId);
             }
             
-            sendJsonResponse(resp, facturas, HttpServletResponse.SC_OK);
+            sendJsonStream(resp, facturas, HttpServletResponse.SC_OK);
         } else {
             String id = pathInfo.substring(1);
             Optional<Factura> facturaOpt = facturaService.findById(id);
@@ -88,6 +103,41 @@ public class FacturaServlet extends BaseServlet {
         }
     }
     
+    private void sendPaginaFacturas(HttpServletRequest req, HttpServletResponse resp, String userRole, Integer userId,
+            String clienteId, String comercialId) throws IOException {
+        String after = req.getParameter("after");
+        int limit;
+        try {
+            limit = getPageLimit(req);
+        } catch (NumberFormatException e) {
+            sendErrorResponse(resp, "limit inválido", HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        
+        Page<Factura, String> pagina;
+        try {
+            // mismas reglas de visibilidad que la lista completa
+            if ("pseudoadmin".equals(userRole)) {
+                if (clienteId != null) {
+                    pagina = facturaService.findPageByClienteId(Integer.parseInt(clienteId), after, limit);
+                } else if (comercialId != null) {
+                    pagina = facturaService.findPageByComercialId(Integer.parseInt(comercialId), after, limit);
+                } else {
+                    pagina = facturaService.findPage(after, limit);
+                }
+            } else if ("comercial".equals(userRole)) {
+                pagina = facturaService.findPageByComercialId(userId, after, limit);
+            } else {
+                pagina = facturaService.findPageByClienteId(userId, after, limit);
+            }
+        } catch (NumberFormatException e) {
+            sendErrorResponse(resp, "clienteId o comercialId inválido", HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        
+        sendJsonResponse(resp, pagina, HttpServletResponse.SC_OK);
+    }
+    
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String userRole = (String) req.getAttribute("userRole");
@@ -99,6 +149,11 @@ public class FacturaServlet extends BaseServlet {
             return;
         }
         
+        if ("/batch".equals(req.getPathInfo())) {
+            crearLote(req, resp, "comercial".equals(userRole) ? userId : null);
+            return;
+        }
+        
         try {
             String json = req.getReader().lines().reduce("", (acc, line) -> acc + line);
             Factura factura = JsonUtil.fromJson(json, Factura.class);
@@ -119,12 +174,63 @@ public class FacturaServlet extends BaseServlet {
             
             Factura saved = facturaService.save(factura);
             sendJsonResponse(resp, saved, HttpServletResponse.SC_CREATED);
+        } catch (EntityExistsException e) {
+            sendErrorResponse(resp, e.getMessage(), HttpServletResponse.SC_CONFLICT);
         } catch (Exception e) {
             sendErrorResponse(resp, "Error al crear factura: " + e.getMessage(), 
                 HttpServletResponse.SC_BAD_REQUEST);
         }
     }
     
+    // POST /api/facturas/batch: el array se procesa mientras se lee, sin cargar el cuerpo entero,
+    // y la respuesta indica por elemento si se creo o por que se rechazo
+    private void crearLote(HttpServletRequest req, HttpServletResponse resp, Integer comercialId) throws IOException {
+        List<FacturaService.BatchResult> resultados = new ArrayList<>();
+        List<Factura> lote = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        long inicio = System.currentTimeMillis();
+        try {
+            JsonUtil.readJsonArray(req.getInputStream(), Factura.class, factura -> {
+                lote.add(factura);
+                if (lote.size() == IMPORT_CHUNK_SIZE) {
+                    resultados.addAll(facturaService.saveAll(lote, resultados.size(), comercialId));
+                    lote.clear();
+                }
+            });
+            if (!lote.isEmpty()) {
+                resultados.addAll(facturaService.saveAll(lote, resultados.size(), comercialId));
+            }
+        } catch (JsonProcessingException e) {
+            // JSON mal formado: culpa del cliente, se le dice donde (el mensaje va escapado por Jackson, no concatenado)
+            EntityManagerProducer.markRollbackOnly();
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("error", "JSON mal formado, no se ha guardado ninguna factura: " + e.getOriginalMessage());
+            if (e.getLocation() != null) {
+                error.put("linea", e.getLocation().getLineNr());
+                error.put("columna", e.getLocation().getColumnNr());
+            }
+            sendJsonResponse(resp, error, HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        } catch (Exception e) {
+            // fallo de la base de datos o de la conexion a mitad de la importacion: no se confirma nada
+            EntityManagerProducer.markRollbackOnly();
+            System.err.println("[FacturaServlet] Error en la importación: " + e.getMessage());
+            sendErrorResponse(resp, "Error interno en la importación, no se ha guardado ninguna factura",
+                HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        
+        long creadas = resultados.stream().filter(FacturaService.BatchResult::isCreada).count();
+        System.out.println("[FacturaServlet] Importación: " + creadas + "/" + resultados.size() + " facturas en "
+            + (System.currentTimeMillis() - inicio) + " ms");
+        
+        Map<String, Object> respuesta = new LinkedHashMap<>();
+        respuesta.put("total", resultados.size());
+        respuesta.put("creadas", creadas);
+        respuesta.put("errores", resultados.size() - creadas);
+        respuesta.put("resultados", resultados);
+        sendJsonResponse(resp, respuesta, HttpServletResponse.SC_OK);
+    }
+    
     @Override
     protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
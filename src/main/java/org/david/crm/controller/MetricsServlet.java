@@ -0,0 +1,104 @@
+package org.david.crm.controller;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.david.crm.concurrent.AsyncLogService;
+import org.david.crm.concurrent.AsyncReportService;
+import org.david.crm.concurrent.RateLimiter;
+import org.david.crm.concurrent.stats.ApiStatistics;
+import org.david.crm.config.ConnectionPoolMetrics;
+import org.david.crm.config.EntityManagerProducer;
+import org.david.crm.util.OpenMetricsWriter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+
+@WebServlet("/api/metrics")
+@ApplicationScoped
+public class MetricsServlet extends BaseServlet { // metricas en texto OpenMetrics para que Prometheus las recoja sin leer el log
+    
+    @Inject
+    private ApiStatistics apiStatistics;
+    
+    @Inject
+    private RateLimiter rateLimiter;
+    
+    @Inject
+    private AsyncLogService logService;
+    
+    @Inject
+    private AsyncReportService reportService;
+    
+    // un solo buffer para todos los scrapes (cada 5 s, nunca muchos a la vez): crece hasta el tamaño de la respuesta y se queda asi
+    private final StringBuilder buffer = new StringBuilder(32 * 1024);
+    
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) 
+            throws ServletException, IOException {
+        resp.setContentType(OpenMetricsWriter.CONTENT_TYPE);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        PrintWriter out = resp.getWriter();
+        synchronized (buffer) {
+            buffer.setLength(0);
+            render(new OpenMetricsWriter(buffer));
+            out.append(buffer);
+        }
+        out.flush();
+    }
+    
+    private void render(OpenMetricsWriter out) {
+        apiStatistics.writeOpenMetrics(out);
+        
+        RateLimiter.StoreSnapshot limiter = rateLimiter.getSnapshot();
+        out.family("crm_ratelimit_requests", "counter", "Decisiones del rate limiter")
+            .sample("crm_ratelimit_requests_total", "result", "allowed", limiter.getAllowedRequests())
+            .sample("crm_ratelimit_requests_total", "result", "rejected", limiter.getRejectedRequests());
+        out.family("crm_ratelimit_overflow_requests", "counter", "Peticiones de clientes que no cupieron en la tabla del rate limiter")
+            .sample("crm_ratelimit_overflow_requests_total", limiter.getOverflowRequests());
+        out.family("crm_ratelimit_slots_used", "gauge", "Huecos ocupados de la tabla del rate limiter")
+            .sample("crm_ratelimit_slots_used", limiter.getUsed());
+        
+        ConnectionPoolMetrics.PoolSnapshot pool = EntityManagerProducer.getPoolSnapshot();
+        out.family("crm_jdbc_connections", "gauge", "Conexiones del pool JDBC por estado")
+            .sample("crm_jdbc_connections", "state", "active", pool.getActive())
+            .sample("crm_jdbc_connections", "state", "idle", pool.getIdle());
+        out.family("crm_jdbc_connections_max", "gauge", "Tamaño maximo del pool JDBC")
+            .sample("crm_jdbc_connections_max", pool.getMaxSize());
+        out.family("crm_jdbc_pending_threads", "gauge", "Hilos esperando una conexion del pool")
+            .sample("crm_jdbc_pending_threads", pool.getWaiting());
+        out.family("crm_jdbc_acquire_timeouts", "counter", "Esperas de conexion que agotaron el timeout")
+            .sample("crm_jdbc_acquire_timeouts_total", pool.getTimeouts());
+        
+        out.family("crm_executor_queue_depth", "gauge", "Tareas esperando hilo en los executors")
+            .sample("crm_executor_queue_depth", "executor", "informes", reportService.getQueueDepth());
+        out.family("crm_executor_active_threads", "gauge", "Hilos ocupados en los executors")
+            .sample("crm_executor_active_threads", "executor", "informes", reportService.getActiveThreads());
+        out.family("crm_virtual_thread_pinned", "counter", "Hilos virtuales que bloquearon su hilo portador mas del umbral")
+            .sample("crm_virtual_thread_pinned_total", reportService.getPinnedEvents());
+        out.family("crm_virtual_thread_pinned_seconds", "counter", "Tiempo total con hilos portadores bloqueados por pinning")
+            .sample("crm_virtual_thread_pinned_seconds_total", reportService.getPinnedNanos() / 1e9);
+        out.family("crm_report_jobs", "gauge", "Jobs de informes en el registro (en marcha y terminados sin purgar)")
+            .sample("crm_report_jobs", reportService.getJobCount());
+        out.family("crm_report_requests", "counter", "Peticiones de informes: lanzados, unidos a uno en marcha o servidos de uno reciente")
+            .sample("crm_report_requests_total", "result", "started", reportService.getInformesLanzados())
+            .sample("crm_report_requests_total", "result", "coalesced", reportService.getInformesCompartidos())
+            .sample("crm_report_requests_total", "result", "fresh", reportService.getInformesRecientes());
+        out.family("crm_logs_critical_suppressed", "counter", "Logs criticos repetidos que no se escribieron por el limite de repeticiones")
+            .sample("crm_logs_critical_suppressed_total", logService.getSuppressedCritical());
+        out.family("crm_async_log_critical_queue_depth", "gauge", "Logs criticos pendientes de escribir")
+            .sample("crm_async_log_critical_queue_depth", logService.getCriticalQueueDepth());
+        out.family("crm_log_rolls", "counter", "Rotaciones de application.log por tamaño o cambio de dia")
+            .sample("crm_log_rolls_total", logService.getLogRolls());
+        out.family("crm_log_archived_segments", "gauge", "Segmentos de log rotados que se conservan")
+            .sample("crm_log_archived_segments", logService.getArchivedSegments());
+        out.family("crm_log_archived_bytes", "gauge", "Espacio en disco de los segmentos de log rotados")
+            .sample("crm_log_archived_bytes", logService.getArchivedBytes());
+        out.eof();
+    }
+}
@@ -7,6 +7,7 @@ import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.david.crm.model.Producto;
+import org.david.crm.repository.Page;
 import org.david.crm.service.ProductoService;
 import org.david.crm.util.JsonUtil;
 
@@ -27,6 +28,21 @@ public class ProductoServlet extends BaseServlet {
         String seccionId = req.getParameter("seccionId");
         
         if (pathInfo == null || pathInfo.equals("/")) {
+            if (isPageRequest(req)) {
+                try {
+                    Integer after = getIntegerCursor(req);
+                    int limit = getPageLimit(req);
+                    Page<Producto, Integer> pagina = seccionId != null
+                        ? productoService.findPageBySeccionId(Integer.parseInt(seccionId), after, limit)
+                        : productoService.findPage(after, limit);
+                    sendJsonResponse(resp, pagina, HttpServletResponse.SC_OK);
+                } catch (NumberFormatException e) {
+                    sendErrorResponse(resp, "Parámetros de paginación o seccionId inválidos", HttpServletResponse.SC_BAD_REQUEST);
+                }
+                return;
+            }
+            
+            // el catalogo es pequeño y casi estatico: se sirve de la cache de consultas en lugar de abrir un cursor
             List<Producto> productos;
             if (seccionId != null) {
                 try {
@@ -1,143 +1,210 @@
 package org.david.crm.controller;
 
 import java.io.IOException;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.david.crm.concurrent.AsyncReportService;
+import org.david.crm.concurrent.ReportJob;
+import org.david.crm.config.AppConfig;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 
-@WebServlet("/api/informes/*")
+// GET /api/informes/{clientes|facturas|completo}: lanza el informe y responde 202 con el id del job enseguida.
+// Con ?esperar=true la peticion pasa a modo asincrono (startAsync) y se responde cuando el informe termina, sin ocupar
+// un hilo del contenedor mientras tanto; si tarda mas de report.wait.timeoutMs se responde 202 con el id igualmente.
+// GET /api/informes/jobs/{id}: estado del job (queued, processing, done o failed), filas procesadas, tiempos y ruta.
+// GET /api/informes/jobs/{id}/download: el fichero del informe terminado, sin copiarlo por el heap (sendfile de Tomcat
+// si el conector lo soporta, si no FileChannel.transferTo al socket). Todo solo para pseudoadmin
+@WebServlet(urlPatterns = "/api/informes/*", asyncSupported = true)
 @ApplicationScoped
 public class ReportServlet extends BaseServlet {
     
+    private static final String JOBS_PREFIX = "/jobs/";
+    private static final String DOWNLOAD_SUFFIX = "/download";
+    
+    // atributos de Tomcat para que el conector mande el fichero con sendfile cuando termina la peticion
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
     @Inject
     private AsyncReportService reportService;
     
+    private final long waitTimeoutMs = AppConfig.getLong("report.wait.timeoutMs", 30_000);
+    
     @Override
-    protected void doGet(HttpServletRequest req, HttpServletResponse resp) 
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
+        String userRole = (String) req.getAttribute("userRole");
+        
+        // Solo admin: los informes llevan todos los clientes y facturas, y el 202 de un lanzamiento ya da el id para descargarlo
+        if (!"pseudoadmin".equals(userRole)) {
+            sendErrorResponse(resp, "Acceso denegado: solo administradores pueden generar y consultar informes", HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        
         String pathInfo = req.getPathInfo();
         
         if (pathInfo == null || pathInfo.equals("/")) {
-            sendErrorResponse(resp, "Tipo de informe requerido: /clientes, /facturas, /completo", 
+            sendErrorResponse(resp, "Tipo de informe requerido: /clientes, /facturas, /completo",
                 HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
         
+        if (pathInfo.startsWith(JOBS_PREFIX)) {
+            String id = pathInfo.substring(JOBS_PREFIX.length());
+            if (id.endsWith(DOWNLOAD_SUFFIX)) {
+                descargarInforme(req, resp, id.substring(0, id.length() - DOWNLOAD_SUFFIX.length()));
+            } else {
+                consultarJob(resp, id);
+            }
+            return;
+        }
+        
         String tipo = pathInfo.substring(1);
         
         try {
-            switch (tipo) {
-                case "clientes":
-                    generarInformeClientes(resp);
-                    break;
-                case "facturas":
-                    generarInformeFacturas(resp);
-                    break;
-                case "completo":
-                    generarInformeCompleto(resp);
-                    break;
-                default:
-                    sendErrorResponse(resp, "Tipo de informe no válido", 
-                        HttpServletResponse.SC_BAD_REQUEST);
+            ReportJob job = reportService.lanzarInforme(tipo);
+            if (job == null) {
+                sendErrorResponse(resp, "Tipo de informe no válido",
+                    HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            System.out.println("[ReportServlet] Informe de " + tipo + " enviado al executor: job " + job.getId());
+            
+            if ("true".equals(req.getParameter("esperar"))) {
+                esperarInforme(req, resp, job);
+            } else {
+                sendAccepted(req, resp, job);
             }
         } catch (Exception e) {
-            sendErrorResponse(resp, "Error al generar informe: " + e.getMessage(), 
+            System.err.println("[ReportServlet] Error al iniciar informe de " + tipo + ": " + e.getMessage());
+            sendErrorResponse(resp, "Error al generar informe: " + e.getMessage(),
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
     
-    private void generarInformeClientes(HttpServletResponse resp) throws IOException {
-        System.out.println("[ReportServlet] Iniciando generación de informe de clientes...");
-        
-        if (reportService == null) {
-            System.err.println("[ReportServlet] ERROR: reportService es null!");
-            sendErrorResponse(resp, "Error: Servicio de informes no disponible", 
-                HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    private void consultarJob(HttpServletResponse resp, String id) throws IOException {
+        ReportJob job = reportService.getJob(id);
+        if (job == null) {
+            sendErrorResponse(resp, "Job no encontrado", HttpServletResponse.SC_NOT_FOUND);
             return;
         }
-        
-        try {
-            Future<String> future = reportService.generarInformeClientes();
-            System.out.println("[ReportServlet] Tarea de informe de clientes enviada al executor");
-            
-            // Enviar respuesta inmediata (el informe se genera en segundo plano)
-            resp.setStatus(HttpServletResponse.SC_ACCEPTED);
-            resp.setContentType("application/json");
-            resp.getWriter().write("{\"message\": \"Generando informe de clientes en segundo plano...\", " +
-                "\"status\": \"processing\"}");
-        } catch (Exception e) {
-            System.err.println("[ReportServlet] Error al iniciar informe de clientes: " + e.getMessage());
-            e.printStackTrace();
-            sendErrorResponse(resp, "Error al iniciar informe: " + e.getMessage(), 
-                HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-        }
+        sendJsonResponse(resp, job, HttpServletResponse.SC_OK);
     }
     
-    private void generarInformeFacturas(HttpServletResponse resp) throws IOException {
-        System.out.println("[ReportServlet] Iniciando generación de informe de facturas...");
+    private void descargarInforme(HttpServletRequest req, HttpServletResponse resp, String id) throws IOException {
+        ReportJob job = reportService.getJob(id);
+        if (job == null) {
+            sendErrorResponse(resp, "Job no encontrado", HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!"done".equals(job.getStatus()) || job.getRuta() == null) {
+            sendErrorResponse(resp, "El informe no esta terminado (" + job.getStatus() + ")", HttpServletResponse.SC_CONFLICT);
+            return;
+        }
+        Path file = Paths.get(job.getRuta());
+        if (!Files.isRegularFile(file)) { // lo borro la limpieza de informes antiguos
+            sendErrorResponse(resp, "El fichero del informe ya no existe", HttpServletResponse.SC_CONFLICT);
+            return;
+        }
         
-        if (reportService == null) {
-            System.err.println("[ReportServlet] ERROR: reportService es null!");
-            sendErrorResponse(resp, "Error: Servicio de informes no disponible", 
-                HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        long size = Files.size(file);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"" + file.getFileName() + "\"");
+        resp.setContentLengthLong(size);
+        
+        if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORT))) {
+            // el conector manda el fichero directamente del page cache al socket al acabar la peticion
+            req.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            req.setAttribute(SENDFILE_START, 0L);
+            req.setAttribute(SENDFILE_END, size);
             return;
         }
         
-        CompletableFuture<String> future = reportService.generarInformeFacturas();
-        System.out.println("[ReportServlet] Tarea de informe de facturas enviada al executor");
+        // sin sendfile: transferTo deja que el sistema copie a trozos sin pasar por un byte[] nuestro
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+            long position = 0;
+            while (position < size) {
+                long sent = in.transferTo(position, size - position, out);
+                if (sent <= 0) {
+                    break; // el fichero encogio mientras se mandaba
+                }
+                position += sent;
+            }
+        }
+    }
+    
+    // 202 con el job y la URL donde consultarlo
+    private void sendAccepted(HttpServletRequest req, HttpServletResponse resp, ReportJob job) throws IOException {
+        resp.setHeader("Location", req.getContextPath() + req.getServletPath() + JOBS_PREFIX + job.getId());
+        sendJsonResponse(resp, job, HttpServletResponse.SC_ACCEPTED);
+    }
+    
+    // long-poll: el hilo del contenedor vuelve al pool en cuanto sale de doGet; responde el hilo que completa el informe
+    // o el del timeout, el primero que llegue
+    private void esperarInforme(HttpServletRequest req, HttpServletResponse resp, ReportJob job) {
+        AsyncContext async = req.startAsync(req, resp);
+        async.setTimeout(waitTimeoutMs);
+        AtomicBoolean responded = new AtomicBoolean();
         
-        // Manejar el resultado de forma asíncrona
-        future.thenAccept(result -> {
-            try {
-                resp.setStatus(HttpServletResponse.SC_OK);
-                resp.setContentType("application/json");
-                resp.getWriter().write("{\"message\": \"" + result + "\"}");
-            } catch (IOException e) {
-                // Error al escribir respuesta
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (responded.compareAndSet(false, true)) {
+                    try {
+                        sendAccepted(req, resp, job);
+                    } finally {
+                        async.complete();
+                    }
+                }
+            }
+            
+            @Override
+            public void onError(AsyncEvent event) { // el cliente cerro la conexion: el informe sigue y se consulta por id
+                responded.set(true);
+            }
+            
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+            
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        
+        job.future().whenComplete((result, error) -> {
+            if (!responded.compareAndSet(false, true)) {
+                return;
             }
-        }).exceptionally(ex -> {
             try {
-                sendErrorResponse(resp, "Error: " + ex.getMessage(), 
-                    HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                sendJsonResponse(resp, job, error == null ? HttpServletResponse.SC_OK : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             } catch (IOException e) {
-
+                System.err.println("[ReportServlet] Error al enviar el informe " + job.getId() + ": " + e.getMessage());
+            } finally {
+                async.complete();
             }
-            return null;
         });
-        
-
-        resp.setStatus(HttpServletResponse.SC_ACCEPTED);
-        resp.setContentType("application/json");
-        resp.getWriter().write("{\"message\": \"Generando informe de facturas en segundo plano...\", " +
-            "\"status\": \"processing\"}");
-    }
-    
-    private void generarInformeCompleto(HttpServletResponse resp) throws IOException {
-        System.out.println("[ReportServlet] Iniciando generación de informe completo...");
-        
-        if (reportService == null) {
-            System.err.println("[ReportServlet] ERROR: reportService es null!");
-            sendErrorResponse(resp, "Error: Servicio de informes no disponible", 
-                HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            return;
-        }
-        
-        CompletableFuture<String> future = reportService.generarInformeCompleto();
-        System.out.println("[ReportServlet] Tarea de informe completo enviada al executor");
-
-        resp.setStatus(HttpServletResponse.SC_ACCEPTED);
-        resp.setContentType("application/json");
-        resp.getWriter().write("{\"message\": \"Generando informe completo en segundo plano...\", " +
-            "\"status\": \"processing\"}");
     }
 }
-
@@ -1,11 +1,13 @@
 package org.david.crm.controller;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Locale;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.david.crm.concurrent.RateLimiter;
 import org.david.crm.concurrent.stats.ApiStatistics;
+import org.david.crm.config.ConnectionPoolMetrics;
+import org.david.crm.config.EntityManagerProducer;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -22,31 +24,93 @@ public class StatisticsServlet extends BaseServlet {
     @Inject
     private ApiStatistics apiStatistics;
     
+    @Inject
+    private RateLimiter rateLimiter;
+    
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) 
             throws ServletException, IOException {
         ApiStatistics.StatisticsSummary summary = apiStatistics.getSummary();
+        ConnectionPoolMetrics.PoolSnapshot pool = EntityManagerProducer.getPoolSnapshot();
         
-        // Usar DecimalFormat con Locale.US para asegurar punto decimal en JSON
-        DecimalFormat df = new DecimalFormat("#.##", DecimalFormatSymbols.getInstance(Locale.US));
-        String avgTimeStr = df.format(summary.getAverageResponseTime());
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("totalRequests", summary.getTotalRequests());
+        json.put("successfulRequests", summary.getSuccessfulRequests());
+        json.put("failedRequests", summary.getFailedRequests());
+        json.put("logsWritten", summary.getLogsWritten());
+        json.put("logsDropped", summary.getLogsDropped());
+        json.put("logQueueDepth", summary.getLogQueueDepth());
+        json.put("averageResponseTime", redondear(summary.getAverageResponseTime()));
+        
+        // percentiles de latencia por ruta en ms: ultimo minuto, ultimos 5 minutos y desde el arranque
+        Map<String, Object> latencyJson = new LinkedHashMap<>();
+        for (ApiStatistics.EndpointLatencySummary endpoint : apiStatistics.getLatencySummaries()) {
+            Map<String, Object> endpointJson = new LinkedHashMap<>();
+            endpointJson.put("1m", latencia(endpoint.getLastMinute()));
+            endpointJson.put("5m", latencia(endpoint.getLastFiveMinutes()));
+            endpointJson.put("total", latencia(endpoint.getCumulative()));
+            latencyJson.put(endpoint.getRoute(), endpointJson);
+        }
+        json.put("latency", latencyJson);
+        
+        // estado del pool de conexiones JDBC
+        Map<String, Object> poolJson = new LinkedHashMap<>();
+        poolJson.put("active", pool.getActive());
+        poolJson.put("idle", pool.getIdle());
+        poolJson.put("total", pool.getTotal());
+        poolJson.put("waiting", pool.getWaiting());
+        poolJson.put("maxSize", pool.getMaxSize());
+        poolJson.put("acquired", pool.getAcquired());
+        poolJson.put("averageAcquireMs", redondear(pool.getAverageAcquireMs()));
+        poolJson.put("maxAcquireMs", redondear(pool.getMaxAcquireMs()));
+        poolJson.put("timeouts", pool.getTimeouts());
+        json.put("connectionPool", poolJson);
+        
+        // cache de segundo nivel por region
+        Map<String, Object> cacheJson = new LinkedHashMap<>();
+        for (ApiStatistics.CacheRegionSummary region : apiStatistics.getCacheSummaries()) {
+            Map<String, Object> regionJson = new LinkedHashMap<>();
+            regionJson.put("hits", region.getHits());
+            regionJson.put("misses", region.getMisses());
+            regionJson.put("puts", region.getPuts());
+            regionJson.put("hitRatio", redondear(region.getHitRatio()));
+            cacheJson.put(region.getRegion(), regionJson);
+        }
+        json.put("cache", cacheJson);
         
-        String json = String.format(
-            "{\"totalRequests\": %d, " +
-            "\"successfulRequests\": %d, " +
-            "\"failedRequests\": %d, " +
-            "\"logsWritten\": %d, " +
-            "\"averageResponseTime\": %s}",
-            summary.getTotalRequests(),
-            summary.getSuccessfulRequests(),
-            summary.getFailedRequests(),
-            summary.getLogsWritten(),
-            avgTimeStr
-        );
+        // tabla del rate limiter: algoritmo, memoria fija, huecos ocupados y clientes que no cupieron
+        RateLimiter.StoreSnapshot limiter = rateLimiter.getSnapshot();
+        Map<String, Object> limiterJson = new LinkedHashMap<>();
+        limiterJson.put("algorithm", limiter.getAlgorithm());
+        limiterJson.put("slots", limiter.getSlots());
+        limiterJson.put("used", limiter.getUsed());
+        limiterJson.put("reclaimed", limiter.getReclaimed());
+        limiterJson.put("overflowRequests", limiter.getOverflowRequests());
+        limiterJson.put("allowedRequests", limiter.getAllowedRequests());
+        limiterJson.put("rejectedRequests", limiter.getRejectedRequests());
+        limiterJson.put("footprintBytes", limiter.getFootprintBytes());
+        json.put("rateLimiter", limiterJson);
         
-        resp.setContentType("application/json");
-        resp.setCharacterEncoding("UTF-8");
-        resp.getWriter().write(json);
+        sendJsonResponse(resp, json, HttpServletResponse.SC_OK);
+    }
+    
+    private static Map<String, Object> latencia(ApiStatistics.LatencySummary latency) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("count", latency.getCount());
+        json.put("p50", milis(latency.getP50()));
+        json.put("p90", milis(latency.getP90()));
+        json.put("p99", milis(latency.getP99()));
+        json.put("p999", milis(latency.getP999()));
+        json.put("max", milis(latency.getMax()));
+        return json;
+    }
+    
+    private static double milis(long nanos) { // ms con tres decimales (resolucion de 1 µs)
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+    
+    private static double redondear(double value) { // dos decimales, como antes con DecimalFormat
+        return Math.round(value * 100.0) / 100.0;
     }
     
     @Override
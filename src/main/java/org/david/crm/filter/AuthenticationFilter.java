@@ -1,6 +1,10 @@
 package org.david.crm.filter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.david.crm.config.AppConfig;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.servlet.Filter;
@@ -14,10 +18,13 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebFilter("/api/*")
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
 @ApplicationScoped
 public class AuthenticationFilter implements Filter {
     
+    // token del scraper de Prometheus para /api/metrics (Authorization: Bearer <token>); vacio = solo con sesion como el resto
+    private final byte[] metricsToken = AppConfig.get("metrics.token", "").getBytes(StandardCharsets.UTF_8);
+    
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         // Inicialización si es necesaria
@@ -38,6 +45,12 @@ public class AuthenticationFilter implements Filter {
             return;
         }
         
+        // Permitir las metricas al scraper con su token, que no tiene sesion
+        if (requestURI.endsWith("/metrics") && isMetricsToken(httpRequest.getHeader("Authorization"))) {
+            chain.doFilter(request, response);
+            return;
+        }
+        
         // Verificar sesión
         HttpSession session = httpRequest.getSession(false);
         if (session == null || session.getAttribute("userId") == null) {
@@ -60,6 +73,14 @@ public class AuthenticationFilter implements Filter {
         chain.doFilter(request, response);
     }
     
+    private boolean isMetricsToken(String authorization) {
+        if (metricsToken.length == 0 || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        // comparacion en tiempo constante: no deja adivinar el token caracter a caracter midiendo la respuesta
+        return MessageDigest.isEqual(metricsToken, authorization.substring(7).trim().getBytes(StandardCharsets.UTF_8));
+    }
+    
     @Override
     public void destroy() {
       
@@ -3,6 +3,7 @@ package org.david.crm.filter;
 import java.io.IOException;
 
 import org.david.crm.concurrent.RateLimiter;
+import org.david.crm.config.AppConfig;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -14,15 +15,23 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.annotation.WebFilter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
 
 
-@WebFilter("/api/*")
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
 @ApplicationScoped
-public class RateLimitFilter implements Filter {  // aplica la logica de rate limiting a todas las peticiones http 
+public class RateLimitFilter implements Filter {  // aplica la logica de rate limiting a todas las peticiones http
     
     @Inject
     private RateLimiter rateLimiter;
     
+    // coste en tokens de cada tipo de ruta (crm.properties): generar un informe o comprobar una contraseña pesa mas que un GET
+    private final int costeInformes = AppConfig.getInt("ratelimit.cost.informes", 10);
+    private final int costeImportacion = AppConfig.getInt("ratelimit.cost.importacion", 20);
+    private final int costeLogin = AppConfig.getInt("ratelimit.cost.login", 5);
+    private final int costeEscritura = AppConfig.getInt("ratelimit.cost.escritura", 2);
+    private final int costeLectura = AppConfig.getInt("ratelimit.cost.lectura", 1);
+    
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
@@ -30,34 +39,57 @@ public class RateLimitFilter implements Filter {  // aplica la logica de rate li
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
-       
-        String clientId = getClientId(httpRequest);
+        // la sesion se lee aqui directamente: el orden de los filtros anotados no esta garantizado
+        // y este puede ejecutarse antes que AuthenticationFilter
+        HttpSession session = httpRequest.getSession(false);
+        String role = session != null ? (String) session.getAttribute("userRole") : null;
+        String clientId = getClientId(httpRequest, session);
+        int cost = getCost(httpRequest);
+        
+        RateLimiter.Decision decision = rateLimiter.tryConsume(clientId, role, cost);
         
+        httpResponse.setHeader("X-RateLimit-Limit", String.valueOf(decision.getLimit()));
+        httpResponse.setHeader("X-RateLimit-Remaining", String.valueOf(decision.getRemaining()));
         
-        if (!rateLimiter.allowRequest(clientId)) {
+        if (!decision.isAllowed()) {
             httpResponse.setStatus(429);
+            httpResponse.setHeader("Retry-After", String.valueOf(decision.getRetryAfterSeconds()));
             httpResponse.setContentType("application/json");
             httpResponse.setCharacterEncoding("UTF-8");
             httpResponse.getWriter().write(
-                String.format("{\"error\": \"Rate limit excedido. Límite: 100 peticiones por minuto. Restantes: %d\"}",
-                    rateLimiter.getRemainingRequests(clientId))
+                String.format("{\"error\": \"Rate limit excedido. Límite: %d peticiones. Reintentar en %d s\"}",
+                    decision.getLimit(), decision.getRetryAfterSeconds())
             );
             return;
         }
         
-       
-        httpResponse.setHeader("X-RateLimit-Remaining", 
-            String.valueOf(rateLimiter.getRemainingRequests(clientId)));
-        httpResponse.setHeader("X-RateLimit-Limit", "100");
-        
-       
         chain.doFilter(request, response);
     }
     
-  
-    private String getClientId(HttpServletRequest request) { 
-        
-        return request.getRemoteAddr(); 
+    // con sesion el limite es por usuario (tipo + id, los ids de clientes y comerciales se solapan); sin sesion por IP
+    private String getClientId(HttpServletRequest request, HttpSession session) {
+        Object userId = session != null ? session.getAttribute("userId") : null;
+        if (userId != null) {
+            return session.getAttribute("userType") + ":" + userId;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+    
+    private int getCost(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String method = request.getMethod();
+        if (uri.contains("/api/informes/jobs/")) { // consultar o descargar un job no lanza nada: el dashboard hace polling
+            return costeLectura;
+        }
+        if (uri.contains("/api/informes")) {
+            return costeInformes;
+        }
+        if (uri.endsWith("/login")) {
+            return costeLogin;
+        }
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return costeLectura;
+        }
+        return uri.endsWith("/facturas/batch") ? costeImportacion : costeEscritura;
     }
 }
-
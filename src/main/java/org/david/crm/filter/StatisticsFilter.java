@@ -7,6 +7,8 @@ import org.david.crm.concurrent.stats.ApiStatistics;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -17,7 +19,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 
-@WebFilter("/api/*")
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
 @ApplicationScoped
 public class StatisticsFilter implements Filter { // filtra todas las peticiones http y actualiza las estadisticas de la api
     
@@ -34,37 +36,96 @@ public class StatisticsFilter implements Filter { // filtra todas las peticiones
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
         
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime(); // con currentTimeMillis las peticiones de menos de 1 ms contaban 0
         
         // Incrementar contador de peticiones totales 
         apiStatistics.incrementTotalRequests();
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR; // si la cadena lanza una excepcion la peticion cuenta como 5xx
+        boolean async = false;
         
         try {
-         
+            
             chain.doFilter(request, response);
             
-           
-            int status = httpResponse.getStatus();
-            if (status >= 200 && status < 300) {
-                apiStatistics.incrementSuccessfulRequests();
-            } else {
-                apiStatistics.incrementFailedRequests();
+            if (httpRequest.isAsyncStarted()) {
+                // la respuesta la termina otro hilo (informes con startAsync): se cuenta cuando se complete, con su estado y su tiempo real
+                async = true;
+                httpRequest.getAsyncContext().addListener(new CompletionListener(httpRequest, httpResponse, startTime));
+                return;
             }
+            status = httpResponse.getStatus();
         } catch (Exception e) {
-            // Si hay una excepción incrementar contador de fallos
-            apiStatistics.incrementFailedRequests();
-            logService.logCriticoAsync("Exception en petición: " + httpRequest.getMethod() + " " + httpRequest.getRequestURI() + " - " + e.getMessage());
+            logService.error("peticion.excepcion").with("metodo", httpRequest.getMethod()).with("uri", httpRequest.getRequestURI())
+                .with("error", e.getMessage()).log();
             throw e;
         } finally {
-            // Calcular tiempo de respuesta y añadirlo al total
-            long responseTime = System.currentTimeMillis() - startTime;
-            apiStatistics.addResponseTime(responseTime);
-            
-            // Loggear peticiones lentas (>= 1 segundo)
-            if (responseTime >= 1000) {
-                logService.logAsync("Petición lenta: " + httpRequest.getMethod() + " " + httpRequest.getRequestURI() + " - " + responseTime + "ms");
+            if (!async) {
+                finish(httpRequest, status, startTime);
             }
         }
     }
+    
+    private void finish(HttpServletRequest httpRequest, int status, long startTime) {
+        if (status >= 200 && status < 300) {
+            apiStatistics.incrementSuccessfulRequests();
+        } else {
+            apiStatistics.incrementFailedRequests();
+        }
+        
+        // Calcular tiempo de respuesta y añadirlo al total y al histograma de la ruta
+        long responseNanos = System.nanoTime() - startTime;
+        apiStatistics.recordResponseTime(getRoute(httpRequest), status, responseNanos);
+        
+        // Loggear peticiones lentas (>= 1 segundo)
+        long responseTime = responseNanos / 1_000_000L;
+        if (responseTime >= 1000) {
+            logService.warn("peticion.lenta").with("metodo", httpRequest.getMethod()).with("uri", httpRequest.getRequestURI())
+                .with("ms", responseTime).log();
+        }
+    }
+    
+    // metodo + patron del servlet (GET /api/facturas/*), no la URI: los ids no crean una ruta nueva por peticion.
+    // Los metodos raros se agrupan para que una cabecera inventada no cree histogramas
+    private String getRoute(HttpServletRequest request) {
+        String method = request.getMethod();
+        switch (method) {
+            case "GET": case "POST": case "PUT": case "DELETE": case "PATCH": case "HEAD": case "OPTIONS":
+                break;
+            default:
+                method = "OTHER";
+        }
+        String pattern = request.getHttpServletMapping().getPattern();
+        return method + " " + (pattern == null || pattern.isEmpty() ? "(sin servlet)" : pattern);
+    }
+    
+    
+    // peticion asincrona: onComplete llega una vez, tambien despues de un timeout o un error
+    private class CompletionListener implements AsyncListener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final long startTime;
+        
+        CompletionListener(HttpServletRequest request, HttpServletResponse response, long startTime) {
+            this.request = request;
+            this.response = response;
+            this.startTime = startTime;
+        }
+        
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish(request, response.getStatus(), startTime);
+        }
+        
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+        
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+        
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
 }
-
@@ -4,14 +4,13 @@ import java.io.IOException;
 
 import org.david.crm.config.EntityManagerProducer;
 
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
 
 public class TransactionFilter implements Filter { // filtra todas las peticiones http y maneja las transacciones de la base de datos
     
@@ -24,39 +23,17 @@ public class TransactionFilter implements Filter { // filtra todas las peticione
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
         
-        EntityManager em = null;
-        EntityTransaction transaction = null;
-        boolean transactionActive = false;
-        boolean committed = false;
-        
         try {
-            // Crear y configurar EntityManager ANTES de que CDI lo inyecte
-            em = EntityManagerProducer.getEntityManagerFactory().createEntityManager();
-            EntityManagerProducer.setEntityManager(em);
-            
-            // Iniciar transacción
-            transaction = em.getTransaction();
-            transaction.begin();
-            transactionActive = true;
+            // No se crea nada todavia: EntityManager, conexion y transaccion se abren cuando un repositorio los pide
+            EntityManagerProducer.openLazyScope(isReadOnly((HttpServletRequest) request));
             
             chain.doFilter(request, response);
             
-          
-            if (transaction.isActive() && transactionActive) {
-                transaction.commit();
-                committed = true;
-                transactionActive = false;
-            }
+            EntityManagerProducer.commitLazyScope();
             
         } catch (Exception e) {
             // Si hay error, hacer rollback
-            if (transaction != null && transaction.isActive() && transactionActive) {
-                try {
-                    transaction.rollback();
-                } catch (Exception rollbackEx) {
-                    // Ignorar errores de rollback
-                }
-            }
+            EntityManagerProducer.rollbackLazyScope();
            
             if (e instanceof ServletException) {
                 throw (ServletException) e;
@@ -67,13 +44,21 @@ public class TransactionFilter implements Filter { // filtra todas las peticione
             }
         } finally {
 
-            EntityManagerProducer.removeEntityManager();
+            EntityManagerProducer.closeLazyScope();
         }
     }
     
+    // GET/HEAD no modifican datos; el login es un POST pero solo consulta usuarios
+    private boolean isReadOnly(HttpServletRequest request) {
+        String method = request.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return true;
+        }
+        return "POST".equals(method) && request.getRequestURI().endsWith("/login");
+    }
+    
     @Override
     public void destroy() {
     // Limpieza si es necesaria
     }
 }
-
@@ -1,10 +1,16 @@
 package org.david.crm.model;
 
 import jakarta.persistence.*;
+import org.david.crm.config.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.io.Serializable;
 import java.math.BigDecimal;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.PRODUCTOS)
 @Table(name = "productos")
 public class Producto implements Serializable {
     
@@ -1,9 +1,15 @@
 package org.david.crm.model;
 
 import jakarta.persistence.*;
+import org.david.crm.config.CacheRegions;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import java.io.Serializable;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheRegions.SECCIONES)
 @Table(name = "secciones")
 public class Seccion implements Serializable {
     
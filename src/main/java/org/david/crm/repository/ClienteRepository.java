@@ -3,12 +3,17 @@ package org.david.crm.repository;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.TypedQuery;
 import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.model.Cliente;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class ClienteRepository implements Repository<Cliente, Integer> {
@@ -29,6 +34,30 @@ public class ClienteRepository implements Repository<Cliente, Integer> {
         return query.getResultList();
     }
     
+    // cabecera de los informes: cuenta en MySQL en vez de traer la tabla para llamar a size()
+    public long count() {
+        return getEntityManager().createQuery("SELECT COUNT(c) FROM Cliente c", Long.class).getSingleResult();
+    }
+    
+    @Override
+    public Stream<Cliente> streamAll() {
+        EntityManager em = getEntityManager();
+        TypedQuery<Cliente> query = em.createQuery("SELECT c FROM Cliente c LEFT JOIN FETCH c.comercial", Cliente.class);
+        return Repository.stream(query);
+    }
+    
+    @Override
+    public Page<Cliente, Integer> findPage(Integer after, int limit) {
+        EntityManager em = getEntityManager();
+        // keyset: WHERE id > cursor sobre la clave primaria, sin OFFSET, coste O(limit) en cualquier pagina
+        TypedQuery<Cliente> query = em.createQuery(
+            "SELECT c FROM Cliente c LEFT JOIN FETCH c.comercial " +
+            "WHERE c.clienteId > :after ORDER BY c.clienteId", Cliente.class);
+        query.setParameter("after", after != null ? after : 0);
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Cliente::getClienteId);
+    }
+    
     @Override
     public Optional<Cliente> findById(Integer id) {
         EntityManager em = getEntityManager();
@@ -53,14 +82,58 @@ public class ClienteRepository implements Repository<Cliente, Integer> {
         return query.getResultList();
     }
     
+    public Stream<Cliente> streamByComercialId(Integer comercialId) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Cliente> query = em.createQuery(
+            "SELECT c FROM Cliente c WHERE c.comercial.comercialId = :comercialId", Cliente.class);
+        query.setParameter("comercialId", comercialId);
+        return Repository.stream(query);
+    }
+    
+    public Page<Cliente, Integer> findPageByComercialId(Integer comercialId, Integer after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Cliente> query = em.createQuery(
+            "SELECT c FROM Cliente c WHERE c.comercial.comercialId = :comercialId " +
+            "AND c.clienteId > :after ORDER BY c.clienteId", Cliente.class);
+        query.setParameter("comercialId", comercialId);
+        query.setParameter("after", after != null ? after : 0);
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Cliente::getClienteId);
+    }
+    
+    // comprobacion de existencia en bloque para las importaciones: una sola consulta por lote en vez de un findById por elemento
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        EntityManager em = getEntityManager();
+        TypedQuery<Integer> query = em.createQuery(
+            "SELECT c.clienteId FROM Cliente c WHERE c.clienteId IN :ids", Integer.class);
+        query.setParameter("ids", ids);
+        return new HashSet<>(query.getResultList());
+    }
+    
+    // proxy sin SELECT para asignar claves foraneas
+    public Cliente getReference(Integer id) {
+        return getEntityManager().getReference(Cliente.class, id);
+    }
+    
     @Override
     public Cliente save(Cliente cliente) {
         EntityManager em = getEntityManager();
-        if (cliente.getClienteId() == null) {
-            em.persist(cliente);
-            return cliente;
-        } else {
-            return em.merge(cliente);
+        try {
+            Cliente saved;
+            if (cliente.getClienteId() == null) {
+                em.persist(cliente);
+                saved = cliente;
+            } else {
+                saved = em.merge(cliente);
+            }
+            em.flush(); // el comercial es una referencia sin comprobar: si no existe lo rechaza la clave foranea
+            return saved;
+        } catch (PersistenceException e) {
+            throw ConstraintErrors.traducir(e, "Ya existe un cliente con el username: " + cliente.getUsername(),
+                "El comercial indicado no existe");
         }
     }
     
@@ -6,8 +6,12 @@ import jakarta.persistence.TypedQuery;
 import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.model.Comercial;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class ComercialRepository implements Repository<Comercial, Integer> {
@@ -28,6 +32,27 @@ public class ComercialRepository implements Repository<Comercial, Integer> {
         return query.getResultList();
     }
     
+    public long count() {
+        return getEntityManager().createQuery("SELECT COUNT(c) FROM Comercial c", Long.class).getSingleResult();
+    }
+    
+    @Override
+    public Stream<Comercial> streamAll() {
+        EntityManager em = getEntityManager();
+        TypedQuery<Comercial> query = em.createQuery("SELECT c FROM Comercial c", Comercial.class);
+        return Repository.stream(query);
+    }
+    
+    @Override
+    public Page<Comercial, Integer> findPage(Integer after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Comercial> query = em.createQuery(
+            "SELECT c FROM Comercial c WHERE c.comercialId > :after ORDER BY c.comercialId", Comercial.class);
+        query.setParameter("after", after != null ? after : 0);
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Comercial::getComercialId);
+    }
+    
     @Override
     public Optional<Comercial> findById(Integer id) {
         EntityManager em = getEntityManager();
@@ -43,6 +68,23 @@ public class ComercialRepository implements Repository<Comercial, Integer> {
         return query.getResultStream().findFirst();
     }
     
+    // comprobacion de existencia en bloque para las importaciones: una sola consulta por lote en vez de un findById por elemento
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        EntityManager em = getEntityManager();
+        TypedQuery<Integer> query = em.createQuery(
+            "SELECT c.comercialId FROM Comercial c WHERE c.comercialId IN :ids", Integer.class);
+        query.setParameter("ids", ids);
+        return new HashSet<>(query.getResultList());
+    }
+    
+    // proxy sin SELECT para asignar claves foraneas
+    public Comercial getReference(Integer id) {
+        return getEntityManager().getReference(Comercial.class, id);
+    }
+    
     @Override
     public Comercial save(Comercial comercial) {
         EntityManager em = getEntityManager();
@@ -0,0 +1,33 @@
+package org.david.crm.repository;
+
+import org.hibernate.exception.ConstraintViolationException;
+
+import jakarta.persistence.EntityExistsException;
+import jakarta.persistence.PersistenceException;
+
+final class ConstraintErrors { // traduce las violaciones de restricciones de MySQL a excepciones que los servlets saben responder
+
+    private static final int MYSQL_DUPLICATE_KEY = 1062; // ER_DUP_ENTRY
+    private static final int MYSQL_FK_PARENT_MISSING = 1452; // ER_NO_REFERENCED_ROW_2
+
+    private ConstraintErrors() {
+    }
+
+    // clave duplicada -> EntityExistsException (409), clave foranea inexistente -> IllegalArgumentException (400), resto sin tocar
+    static RuntimeException traducir(PersistenceException e, String duplicada, String referenciaInexistente) {
+        Throwable cause = e;
+        while (cause != null && !(cause instanceof ConstraintViolationException)) {
+            cause = cause.getCause();
+        }
+        if (cause != null) {
+            int errorCode = ((ConstraintViolationException) cause).getErrorCode();
+            if (errorCode == MYSQL_DUPLICATE_KEY) {
+                return new EntityExistsException(duplicada, e);
+            }
+            if (errorCode == MYSQL_FK_PARENT_MISSING) {
+                return new IllegalArgumentException(referenciaInexistente, e);
+            }
+        }
+        return e;
+    }
+}
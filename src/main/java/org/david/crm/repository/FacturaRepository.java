@@ -2,12 +2,18 @@ package org.david.crm.repository;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.TypedQuery;
 import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.model.Factura;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class FacturaRepository implements Repository<Factura, String> {
@@ -34,6 +40,74 @@ public class FacturaRepository implements Repository<Factura, String> {
         return query.getResultList();
     }
     
+    public long count() {
+        return getEntityManager().createQuery("SELECT COUNT(f) FROM Factura f", Long.class).getSingleResult();
+    }
+    
+    public BigDecimal sumTotal() { // suma exacta en la base de datos, sin recorrer las facturas
+        BigDecimal total = getEntityManager().createQuery("SELECT SUM(f.total) FROM Factura f", BigDecimal.class).getSingleResult();
+        return total != null ? total : BigDecimal.ZERO; // SUM de una tabla vacia es null
+    }
+    
+    // sin DISTINCT: con joins ManyToOne no hay filas duplicadas y DISTINCT obligaria a Hibernate a acumular el resultado
+    @Override
+    public Stream<Factura> streamAll() {
+        EntityManager em = getEntityManager();
+        TypedQuery<Factura> query = em.createQuery(
+            "SELECT f FROM Factura f " +
+            "LEFT JOIN FETCH f.cliente " +
+            "LEFT JOIN FETCH f.comercial " +
+            "LEFT JOIN FETCH f.producto p " +
+            "LEFT JOIN FETCH p.seccion", 
+            Factura.class);
+        return Repository.stream(query);
+    }
+    
+    public Stream<Factura> streamByClienteId(Integer clienteId) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Factura> query = em.createQuery(
+            "SELECT f FROM Factura f " +
+            "LEFT JOIN FETCH f.cliente " +
+            "LEFT JOIN FETCH f.comercial " +
+            "LEFT JOIN FETCH f.producto p " +
+            "LEFT JOIN FETCH p.seccion " +
+            "WHERE f.cliente.clienteId = :clienteId", 
+            Factura.class);
+        query.setParameter("clienteId", clienteId);
+        return Repository.stream(query);
+    }
+    
+    public Stream<Factura> streamByComercialId(Integer comercialId) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Factura> query = em.createQuery(
+            "SELECT f FROM Factura f " +
+            "LEFT JOIN FETCH f.cliente " +
+            "LEFT JOIN FETCH f.comercial " +
+            "LEFT JOIN FETCH f.producto p " +
+            "LEFT JOIN FETCH p.seccion " +
+            "WHERE f.comercial.comercialId = :comercialId", 
+            Factura.class);
+        query.setParameter("comercialId", comercialId);
+        return Repository.stream(query);
+    }
+    
+    @Override
+    public Page<Factura, String> findPage(String after, int limit) {
+        EntityManager em = getEntityManager();
+        // sin DISTINCT: solo hay joins ManyToOne, no se duplican filas y el LIMIT se aplica en la base de datos
+        TypedQuery<Factura> query = em.createQuery(
+            "SELECT f FROM Factura f " +
+            "LEFT JOIN FETCH f.cliente " +
+            "LEFT JOIN FETCH f.comercial " +
+            "LEFT JOIN FETCH f.producto p " +
+            "LEFT JOIN FETCH p.seccion " +
+            "WHERE f.facturaId > :after ORDER BY f.facturaId", 
+            Factura.class);
+        query.setParameter("after", after != null ? after : "");
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Factura::getFacturaId);
+    }
+    
     @Override
     public Optional<Factura> findById(String id) {
         EntityManager em = getEntityManager();
@@ -69,15 +143,79 @@ public class FacturaRepository implements Repository<Factura, String> {
         return query.getResultList();
     }
     
+    public Page<Factura, String> findPageByClienteId(Integer clienteId, String after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Factura> query = em.createQuery(
+            "SELECT f FROM Factura f " +
+            "LEFT JOIN FETCH f.cliente " +
+            "LEFT JOIN FETCH f.comercial " +
+            "LEFT JOIN FETCH f.producto p " +
+            "LEFT JOIN FETCH p.seccion " +
+            "WHERE f.cliente.clienteId = :clienteId AND f.facturaId > :after ORDER BY f.facturaId", 
+            Factura.class);
+        query.setParameter("clienteId", clienteId);
+        query.setParameter("after", after != null ? after : "");
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Factura::getFacturaId);
+    }
+    
+    public Page<Factura, String> findPageByComercialId(Integer comercialId, String after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Factura> query = em.createQuery(
+            "SELECT f FROM Factura f " +
+            "LEFT JOIN FETCH f.cliente " +
+            "LEFT JOIN FETCH f.comercial " +
+            "LEFT JOIN FETCH f.producto p " +
+            "LEFT JOIN FETCH p.seccion " +
+            "WHERE f.comercial.comercialId = :comercialId AND f.facturaId > :after ORDER BY f.facturaId", 
+            Factura.class);
+        query.setParameter("comercialId", comercialId);
+        query.setParameter("after", after != null ? after : "");
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Factura::getFacturaId);
+    }
+    
+    // comprobacion de existencia en bloque para las importaciones: una sola consulta por lote en vez de un findById por elemento
+    public Set<String> findExistingIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        EntityManager em = getEntityManager();
+        TypedQuery<String> query = em.createQuery(
+            "SELECT f.facturaId FROM Factura f WHERE f.facturaId IN :ids", String.class);
+        query.setParameter("ids", ids);
+        return new HashSet<>(query.getResultList());
+    }
+    
+    // sin existsById previo: una factura sin version es nueva y se inserta directamente, si el id ya existe lo detecta la clave primaria
     @Override
     public Factura save(Factura factura) {
         EntityManager em = getEntityManager();
-        if (factura.getFacturaId() == null || !existsById(factura.getFacturaId())) {
+        try {
+            Factura saved;
+            if (factura.getVersion() == null) {
+                em.persist(factura);
+                saved = factura;
+            } else {
+                saved = em.merge(factura);
+            }
+            em.flush(); // las violaciones de restricciones salen aqui y no en el commit, cuando ya no se puede responder con un error
+            return saved;
+        } catch (PersistenceException e) {
+            throw ConstraintErrors.traducir(e, "Ya existe una factura con id " + factura.getFacturaId(),
+                "El cliente, comercial o producto indicado no existe");
+        }
+    }
+    
+    // inserta un lote: con hibernate.jdbc.batch_size los INSERT se envian agrupados en el flush.
+    // Despues se vacia el contexto para que una importacion grande no acumule miles de entidades gestionadas
+    public void insertAll(List<Factura> facturas) {
+        EntityManager em = getEntityManager();
+        for (Factura factura : facturas) {
             em.persist(factura);
-            return factura;
-        } else {
-            return em.merge(factura);
         }
+        em.flush();
+        em.clear();
     }
     
     @Override
@@ -0,0 +1,32 @@
+package org.david.crm.repository;
+
+import java.util.List;
+import java.util.function.Function;
+
+public class Page<T, ID> { // pagina de resultados con cursor (keyset): items + id a partir del cual pedir la siguiente
+    
+    private final List<T> items;
+    private final ID next;
+    
+    public Page(List<T> items, ID next) {
+        this.items = items;
+        this.next = next;
+    }
+    
+    // las consultas piden limit + 1 filas: si llega la fila extra hay pagina siguiente y el cursor es el id de la ultima devuelta
+    public static <T, ID> Page<T, ID> of(List<T> rows, int limit, Function<T, ID> idGetter) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new Page<>(items, idGetter.apply(items.get(limit - 1)));
+    }
+    
+    public List<T> getItems() {
+        return items;
+    }
+    
+    public ID getNext() {
+        return next;
+    }
+}
@@ -3,11 +3,17 @@ package org.david.crm.repository;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import org.david.crm.config.CacheRegions;
 import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.model.Producto;
+import org.hibernate.jpa.HibernateHints;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class ProductoRepository implements Repository<Producto, Integer> {
@@ -25,9 +31,29 @@ public class ProductoRepository implements Repository<Producto, Integer> {
     public List<Producto> findAll() {
         EntityManager em = getEntityManager();
         TypedQuery<Producto> query = em.createQuery("SELECT p FROM Producto p LEFT JOIN FETCH p.seccion", Producto.class);
+        query.setHint(HibernateHints.HINT_CACHEABLE, true);
+        query.setHint(HibernateHints.HINT_CACHE_REGION, CacheRegions.CONSULTAS_CATALOGO);
         return query.getResultList();
     }
     
+    @Override
+    public Stream<Producto> streamAll() {
+        EntityManager em = getEntityManager();
+        TypedQuery<Producto> query = em.createQuery("SELECT p FROM Producto p LEFT JOIN FETCH p.seccion", Producto.class);
+        return Repository.stream(query);
+    }
+    
+    @Override
+    public Page<Producto, Integer> findPage(Integer after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Producto> query = em.createQuery(
+            "SELECT p FROM Producto p LEFT JOIN FETCH p.seccion " +
+            "WHERE p.productoId > :after ORDER BY p.productoId", Producto.class);
+        query.setParameter("after", after != null ? after : 0);
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Producto::getProductoId);
+    }
+    
     @Override
     public Optional<Producto> findById(Integer id) {
         EntityManager em = getEntityManager();
@@ -40,12 +66,51 @@ public class ProductoRepository implements Repository<Producto, Integer> {
         TypedQuery<Producto> query = em.createQuery(
             "SELECT p FROM Producto p LEFT JOIN FETCH p.seccion WHERE p.seccion.seccionId = :seccionId", Producto.class);
         query.setParameter("seccionId", seccionId);
+        query.setHint(HibernateHints.HINT_CACHEABLE, true);
+        query.setHint(HibernateHints.HINT_CACHE_REGION, CacheRegions.CONSULTAS_CATALOGO);
         return query.getResultList();
     }
     
+    public Stream<Producto> streamBySeccionId(Integer seccionId) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Producto> query = em.createQuery(
+            "SELECT p FROM Producto p LEFT JOIN FETCH p.seccion WHERE p.seccion.seccionId = :seccionId", Producto.class);
+        query.setParameter("seccionId", seccionId);
+        return Repository.stream(query);
+    }
+    
+    public Page<Producto, Integer> findPageBySeccionId(Integer seccionId, Integer after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Producto> query = em.createQuery(
+            "SELECT p FROM Producto p LEFT JOIN FETCH p.seccion WHERE p.seccion.seccionId = :seccionId " +
+            "AND p.productoId > :after ORDER BY p.productoId", Producto.class);
+        query.setParameter("seccionId", seccionId);
+        query.setParameter("after", after != null ? after : 0);
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Producto::getProductoId);
+    }
+    
+    // comprobacion de existencia en bloque para las importaciones: una sola consulta por lote en vez de un findById por elemento
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        EntityManager em = getEntityManager();
+        TypedQuery<Integer> query = em.createQuery(
+            "SELECT p.productoId FROM Producto p WHERE p.productoId IN :ids", Integer.class);
+        query.setParameter("ids", ids);
+        return new HashSet<>(query.getResultList());
+    }
+    
+    // proxy sin SELECT para asignar claves foraneas
+    public Producto getReference(Integer id) {
+        return getEntityManager().getReference(Producto.class, id);
+    }
+    
     @Override
     public Producto save(Producto producto) {
         EntityManager em = getEntityManager();
+        CacheRegions.evictCatalogoAfterCommit(em);
         if (producto.getProductoId() == null) {
             em.persist(producto);
             return producto;
@@ -58,6 +123,7 @@ public class ProductoRepository implements Repository<Producto, Integer> {
     public void deleteById(Integer id) {
         EntityManager em = getEntityManager();
         findById(id).ifPresent(em::remove);
+        CacheRegions.evictCatalogoAfterCommit(em);
     }
     
     @Override
@@ -2,12 +2,29 @@ package org.david.crm.repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.TypedQuery;
 
 public interface Repository<T, ID> {
+    int STREAM_FETCH_SIZE = 500; // filas por viaje a MySQL en los streams (necesita useCursorFetch=true en la URL)
+    
     List<T> findAll();
+    Stream<T> streamAll(); // recorre la tabla fila a fila sin materializar la lista; hay que cerrar el stream
+    Page<T, ID> findPage(ID after, int limit); // paginacion keyset: filas con id > after ordenadas por id (after null = primera pagina)
     Optional<T> findById(ID id);
     T save(T entity);
     void deleteById(ID id);
     boolean existsById(ID id);
+    
+    // cursor de solo lectura con fetch size para los streamAll/streamBy de los repositorios. Las filas (y lo traido con
+    // JOIN FETCH) se quedan en el contexto de persistencia: lo vacia quien consume el stream cada STREAM_FETCH_SIZE filas
+    // ya escritas (BaseServlet.sendJsonStream, ReportWriter.writeRows)
+    static <T> Stream<T> stream(TypedQuery<T> query) {
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, STREAM_FETCH_SIZE);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultStream();
+    }
 }
-
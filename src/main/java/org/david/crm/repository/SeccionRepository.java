@@ -3,11 +3,14 @@ package org.david.crm.repository;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
+import org.david.crm.config.CacheRegions;
 import org.david.crm.config.EntityManagerProducer;
 import org.david.crm.model.Seccion;
+import org.hibernate.jpa.HibernateHints;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class SeccionRepository implements Repository<Seccion, Integer> {
@@ -25,9 +28,28 @@ public class SeccionRepository implements Repository<Seccion, Integer> {
     public List<Seccion> findAll() {
         EntityManager em = getEntityManager();
         TypedQuery<Seccion> query = em.createQuery("SELECT s FROM Seccion s", Seccion.class);
+        query.setHint(HibernateHints.HINT_CACHEABLE, true);
+        query.setHint(HibernateHints.HINT_CACHE_REGION, CacheRegions.CONSULTAS_CATALOGO);
         return query.getResultList();
     }
     
+    @Override
+    public Stream<Seccion> streamAll() {
+        EntityManager em = getEntityManager();
+        TypedQuery<Seccion> query = em.createQuery("SELECT s FROM Seccion s", Seccion.class);
+        return Repository.stream(query);
+    }
+    
+    @Override
+    public Page<Seccion, Integer> findPage(Integer after, int limit) {
+        EntityManager em = getEntityManager();
+        TypedQuery<Seccion> query = em.createQuery(
+            "SELECT s FROM Seccion s WHERE s.seccionId > :after ORDER BY s.seccionId", Seccion.class);
+        query.setParameter("after", after != null ? after : 0);
+        query.setMaxResults(limit + 1);
+        return Page.of(query.getResultList(), limit, Seccion::getSeccionId);
+    }
+    
     @Override
     public Optional<Seccion> findById(Integer id) {
         EntityManager em = getEntityManager();
@@ -38,6 +60,7 @@ public class SeccionRepository implements Repository<Seccion, Integer> {
     @Override
     public Seccion save(Seccion seccion) {
         EntityManager em = getEntityManager();
+        CacheRegions.evictCatalogoAfterCommit(em);
         if (seccion.getSeccionId() == null) {
             em.persist(seccion);
             return seccion;
@@ -50,6 +73,7 @@ public class SeccionRepository implements Repository<Seccion, Integer> {
     public void deleteById(Integer id) {
         EntityManager em = getEntityManager();
         findById(id).ifPresent(em::remove);
+        CacheRegions.evictCatalogoAfterCommit(em); // ON DELETE SET NULL deja productos cacheados con la seccion borrada
     }
     
     @Override
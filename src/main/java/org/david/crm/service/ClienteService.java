@@ -2,16 +2,17 @@ package org.david.crm.service;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
-import jakarta.persistence.EntityManager;
 import jakarta.persistence.OptimisticLockException;
 import org.david.crm.concurrent.AsyncLogService;
 import org.david.crm.model.Cliente;
 import org.david.crm.model.Comercial;
 import org.david.crm.repository.ClienteRepository;
 import org.david.crm.repository.ComercialRepository;
+import org.david.crm.repository.Page;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class ClienteService {
@@ -22,9 +23,6 @@ public class ClienteService {
     @Inject
     private ComercialRepository comercialRepository;
     
-    @Inject
-    private EntityManager em;
-    
     @Inject
     private AsyncLogService logService;
     
@@ -44,6 +42,22 @@ public class ClienteService {
         return clienteRepository.findByComercialId(comercialId);
     }
     
+    public Stream<Cliente> streamAll() {
+        return clienteRepository.streamAll();
+    }
+    
+    public Stream<Cliente> streamByComercialId(Integer comercialId) {
+        return clienteRepository.streamByComercialId(comercialId);
+    }
+    
+    public Page<Cliente, Integer> findPage(Integer after, int limit) {
+        return clienteRepository.findPage(after, limit);
+    }
+    
+    public Page<Cliente, Integer> findPageByComercialId(Integer comercialId, Integer after, int limit) {
+        return clienteRepository.findPageByComercialId(comercialId, after, limit);
+    }
+    
     public Cliente save(Cliente cliente) {
         // Limpiar espacios en blanco del username y passwordHash antes de guardar
         if (cliente.getUsername() != null) {
@@ -66,23 +80,13 @@ public class ClienteService {
             }
         }
         
-        if (cliente.getComercial() != null && cliente.getComercial().getComercialId() != null) {
-
-            try {
-                Comercial comercialRef = em.getReference(Comercial.class, cliente.getComercial().getComercialId());
-                cliente.setComercial(comercialRef);
-            } catch (Exception e) {
-                // Si no existe, eliminar la referencia
-                logService.logAsync("ClienteService.save() - Comercial ID " + cliente.getComercial().getComercialId() + " no encontrado, estableciendo a null");
-                cliente.setComercial(null);
-            }
-        }
+        asignarComercial(cliente);
         Cliente saved = clienteRepository.save(cliente);
-        logService.logAsync("ClienteService.save() - Cliente guardado: ID=" + saved.getClienteId() + ", Username=" + saved.getUsername());
+        logService.info("cliente.insertado").with("id", saved.getClienteId()).with("username", saved.getUsername()).log();
         return saved;
     }
     
-
+    
     public Optional<Cliente> update(Integer id, Cliente cliente) {
         try {
             return clienteRepository.findById(id)
@@ -91,32 +95,35 @@ public class ClienteService {
                     cliente.setClienteId(id);
                     cliente.setVersion(existing.getVersion());
                     
-                    if (cliente.getComercial() != null && cliente.getComercial().getComercialId() != null) {
-                        try {
-                            Comercial comercialRef = em.getReference(Comercial.class, cliente.getComercial().getComercialId());
-                            cliente.setComercial(comercialRef);
-                        } catch (Exception e) {
-                            cliente.setComercial(null);
-                        }
-                    }
+                    asignarComercial(cliente);
                     Cliente updated = clienteRepository.save(cliente);
-                    logService.logAsync("ClienteService.update() - Cliente actualizado: ID=" + updated.getClienteId());
+                    logService.info("cliente.modificado").with("id", updated.getClienteId()).log();
                     return updated;
                 });
         } catch (OptimisticLockException e) {
             // Lost Update detectado: otro usuario modificó el registro
-            logService.logCriticoAsync("ClienteService.update() - OptimisticLockException para Cliente ID=" + id + ": El cliente fue modificado por otro usuario");
+            logService.error("cliente.conflicto_version").with("id", id).log(); // otro usuario lo modifico a la vez
             throw new RuntimeException("El cliente fue modificado por otro usuario. Por favor, recarga los datos.", e);
         }
     }
     
+    // referencia sin SELECT; un comercial inexistente lo rechaza la clave foranea al guardar (400)
+    private void asignarComercial(Cliente cliente) {
+        if (cliente.getComercial() != null && cliente.getComercial().getComercialId() != null) {
+            Comercial comercialRef = comercialRepository.getReference(cliente.getComercial().getComercialId());
+            cliente.setComercial(comercialRef);
+        } else {
+            cliente.setComercial(null);
+        }
+    }
+    
     public boolean deleteById(Integer id) {
         if (clienteRepository.existsById(id)) {
             clienteRepository.deleteById(id);
-            logService.logAsync("ClienteService.deleteById() - Cliente eliminado: ID=" + id);
+            logService.info("cliente.borrado").with("id", id).log();
             return true;
         }
-        logService.logAsync("ClienteService.deleteById() - Cliente no encontrado para eliminar: ID=" + id);
+        logService.info("cliente.no_encontrado").with("metodo", "deleteById").with("id", id).log();
         return false;
     }
 }
@@ -3,16 +3,19 @@ package org.david.crm.service;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.david.crm.model.Factura;
-import org.david.crm.model.Cliente;
 import org.david.crm.model.Comercial;
-import org.david.crm.model.Producto;
 import org.david.crm.repository.FacturaRepository;
 import org.david.crm.repository.ClienteRepository;
 import org.david.crm.repository.ComercialRepository;
+import org.david.crm.repository.Page;
 import org.david.crm.repository.ProductoRepository;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class FacturaService {
@@ -45,47 +48,152 @@ public class FacturaService {
         return facturaRepository.findByComercialId(comercialId);
     }
     
+    public Stream<Factura> streamAll() {
+        return facturaRepository.streamAll();
+    }
+    
+    public Stream<Factura> streamByClienteId(Integer clienteId) {
+        return facturaRepository.streamByClienteId(clienteId);
+    }
+    
+    public Stream<Factura> streamByComercialId(Integer comercialId) {
+        return facturaRepository.streamByComercialId(comercialId);
+    }
+    
+    public Page<Factura, String> findPage(String after, int limit) {
+        return facturaRepository.findPage(after, limit);
+    }
+    
+    public Page<Factura, String> findPageByClienteId(Integer clienteId, String after, int limit) {
+        return facturaRepository.findPageByClienteId(clienteId, after, limit);
+    }
+    
+    public Page<Factura, String> findPageByComercialId(Integer comercialId, String after, int limit) {
+        return facturaRepository.findPageByComercialId(comercialId, after, limit);
+    }
+    
+    // un solo INSERT: sin SELECT de cliente, comercial y producto ni comprobacion previa del id
     public Factura save(Factura factura) {
-        Optional<Cliente> clienteOpt = clienteRepository.findById(
-            factura.getCliente().getClienteId());
-        clienteOpt.ifPresent(factura::setCliente);
-        
-        if (factura.getComercial() != null && factura.getComercial().getComercialId() != null) {
-            Optional<Comercial> comercialOpt = comercialRepository.findById(
-                factura.getComercial().getComercialId());
-            comercialOpt.ifPresent(factura::setComercial);
+        asignarReferencias(factura);
+        factura.setVersion(null); // siempre es una factura nueva
+        return facturaRepository.save(factura);
+    }
+    
+    // importacion masiva: valida el lote con cuatro consultas IN (facturas, clientes, comerciales, productos)
+    // y lo inserta con batching JDBC. Los errores de validacion se devuelven por elemento y no detienen el resto.
+    // firstIndex es la posicion del primer elemento del lote dentro del array recibido.
+    // comercialId != null cuando importa un comercial: las facturas sin comercial se le asignan y las de otro se rechazan
+    public List<BatchResult> saveAll(List<Factura> facturas, int firstIndex, Integer comercialId) {
+        Set<String> facturaIds = new HashSet<>();
+        Set<Integer> clienteIds = new HashSet<>();
+        Set<Integer> comercialIds = new HashSet<>();
+        Set<Integer> productoIds = new HashSet<>();
+        for (Factura factura : facturas) {
+            if (comercialId != null && (factura.getComercial() == null || factura.getComercial().getComercialId() == null)) {
+                Comercial comercialRef = new Comercial();
+                comercialRef.setComercialId(comercialId);
+                factura.setComercial(comercialRef);
+            }
+            if (factura.getFacturaId() != null) {
+                facturaIds.add(factura.getFacturaId());
+            }
+            if (factura.getCliente() != null && factura.getCliente().getClienteId() != null) {
+                clienteIds.add(factura.getCliente().getClienteId());
+            }
+            if (factura.getComercial() != null && factura.getComercial().getComercialId() != null) {
+                comercialIds.add(factura.getComercial().getComercialId());
+            }
+            if (factura.getProducto() != null && factura.getProducto().getProductoId() != null) {
+                productoIds.add(factura.getProducto().getProductoId());
+            }
         }
         
-        Optional<Producto> productoOpt = productoRepository.findById(
-            factura.getProducto().getProductoId());
-        productoOpt.ifPresent(factura::setProducto);
+        // las facturas de lotes anteriores ya estan en la base de datos (flush), asi que tambien cuentan como duplicadas
+        Set<String> usados = facturaRepository.findExistingIds(facturaIds);
+        Set<Integer> clientes = clienteRepository.findExistingIds(clienteIds);
+        Set<Integer> comerciales = comercialRepository.findExistingIds(comercialIds);
+        Set<Integer> productos = productoRepository.findExistingIds(productoIds);
         
-        return facturaRepository.save(factura);
+        List<BatchResult> results = new ArrayList<>(facturas.size());
+        List<Factura> validas = new ArrayList<>(facturas.size());
+        for (int i = 0; i < facturas.size(); i++) {
+            Factura factura = facturas.get(i);
+            String error = comercialId != null && !comercialId.equals(factura.getComercial().getComercialId())
+                ? "No puede asignar facturas a otros comerciales"
+                : validarLote(factura, usados, clientes, comerciales, productos);
+            if (error != null) {
+                results.add(new BatchResult(firstIndex + i, factura.getFacturaId(), error));
+                continue;
+            }
+            usados.add(factura.getFacturaId()); // repetida dentro del mismo lote
+            
+            asignarReferencias(factura);
+            factura.setVersion(null);
+            validas.add(factura);
+            results.add(new BatchResult(firstIndex + i, factura.getFacturaId(), null));
+        }
+        
+        facturaRepository.insertAll(validas);
+        return results;
+    }
+    
+    private String validarLote(Factura factura, Set<String> usados, Set<Integer> clientes,
+            Set<Integer> comerciales, Set<Integer> productos) {
+        if (factura.getFacturaId() == null || factura.getFacturaId().isBlank()) {
+            return "facturaId requerido";
+        }
+        if (usados.contains(factura.getFacturaId())) {
+            return "Ya existe una factura con id " + factura.getFacturaId();
+        }
+        if (factura.getCliente() == null || factura.getCliente().getClienteId() == null) {
+            return "cliente requerido";
+        }
+        if (!clientes.contains(factura.getCliente().getClienteId())) {
+            return "Cliente no encontrado: " + factura.getCliente().getClienteId();
+        }
+        if (factura.getComercial() != null && factura.getComercial().getComercialId() != null
+                && !comerciales.contains(factura.getComercial().getComercialId())) {
+            return "Comercial no encontrado: " + factura.getComercial().getComercialId();
+        }
+        if (factura.getProducto() == null || factura.getProducto().getProductoId() == null) {
+            return "producto requerido";
+        }
+        if (!productos.contains(factura.getProducto().getProductoId())) {
+            return "Producto no encontrado: " + factura.getProducto().getProductoId();
+        }
+        return null;
     }
     
     public Optional<Factura> update(String id, Factura factura) {
         return facturaRepository.findById(id)
             .map(existing -> {
                 factura.setFacturaId(id);
-                
-                Optional<Cliente> clienteOpt = clienteRepository.findById(
-                    factura.getCliente().getClienteId());
-                clienteOpt.ifPresent(factura::setCliente);
-                
-                if (factura.getComercial() != null && factura.getComercial().getComercialId() != null) {
-                    Optional<Comercial> comercialOpt = comercialRepository.findById(
-                        factura.getComercial().getComercialId());
-                    comercialOpt.ifPresent(factura::setComercial);
+                // sin version en el JSON se actualiza sobre la leida; si viene y no coincide salta el locking optimista
+                if (factura.getVersion() == null) {
+                    factura.setVersion(existing.getVersion());
                 }
-                
-                Optional<Producto> productoOpt = productoRepository.findById(
-                    factura.getProducto().getProductoId());
-                productoOpt.ifPresent(factura::setProducto);
-                
+                asignarReferencias(factura);
                 return facturaRepository.save(factura);
             });
     }
     
+    // claves foraneas como referencias sin SELECT; si alguna no existe la rechaza la restriccion de la base de datos (400)
+    private void asignarReferencias(Factura factura) {
+        if (factura.getCliente() == null || factura.getCliente().getClienteId() == null) {
+            throw new IllegalArgumentException("cliente requerido");
+        }
+        if (factura.getProducto() == null || factura.getProducto().getProductoId() == null) {
+            throw new IllegalArgumentException("producto requerido");
+        }
+        factura.setCliente(clienteRepository.getReference(factura.getCliente().getClienteId()));
+        if (factura.getComercial() != null && factura.getComercial().getComercialId() != null) {
+            factura.setComercial(comercialRepository.getReference(factura.getComercial().getComercialId()));
+        } else {
+            factura.setComercial(null);
+        }
+        factura.setProducto(productoRepository.getReference(factura.getProducto().getProductoId()));
+    }
+    
     public boolean deleteById(String id) {
         if (facturaRepository.existsById(id)) {
             facturaRepository.deleteById(id);
@@ -93,5 +201,23 @@ public class FacturaService {
         }
         return false;
     }
+    
+    
+    public static class BatchResult {
+        private final int index;
+        private final String facturaId;
+        private final String error;
+        
+        public BatchResult(int index, String facturaId, String error) {
+            this.index = index;
+            this.facturaId = facturaId;
+            this.error = error;
+        }
+        
+        // Getters
+        public int getIndex() { return index; }
+        public String getFacturaId() { return facturaId; }
+        public boolean isCreada() { return error == null; }
+        public String getError() { return error; }
+    }
 }
-
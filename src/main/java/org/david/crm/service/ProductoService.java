@@ -4,11 +4,13 @@ import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.david.crm.model.Producto;
 import org.david.crm.model.Seccion;
+import org.david.crm.repository.Page;
 import org.david.crm.repository.ProductoRepository;
 import org.david.crm.repository.SeccionRepository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @ApplicationScoped
 public class ProductoService {
@@ -31,6 +33,22 @@ public class ProductoService {
         return productoRepository.findBySeccionId(seccionId);
     }
     
+    public Stream<Producto> streamAll() {
+        return productoRepository.streamAll();
+    }
+    
+    public Stream<Producto> streamBySeccionId(Integer seccionId) {
+        return productoRepository.streamBySeccionId(seccionId);
+    }
+    
+    public Page<Producto, Integer> findPage(Integer after, int limit) {
+        return productoRepository.findPage(after, limit);
+    }
+    
+    public Page<Producto, Integer> findPageBySeccionId(Integer seccionId, Integer after, int limit) {
+        return productoRepository.findPageBySeccionId(seccionId, after, limit);
+    }
+    
     public Producto save(Producto producto) {
         if (producto.getSeccion() != null && producto.getSeccion().getSeccionId() != null) {
             Optional<Seccion> seccionOpt = seccionRepository.findById(
@@ -1,8 +1,20 @@
 package org.david.crm.util;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.hibernate6.Hibernate6Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -10,6 +22,7 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 public class JsonUtil { // utilidad para convertir objetos a JSON y viceversa
     
     private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final ObjectWriter streamWriter; // sin flush por elemento: el generador vacia su buffer solo cuando se llena
     
     static {
         objectMapper.registerModule(new JavaTimeModule());
@@ -17,11 +30,14 @@ public class JsonUtil { // utilidad para convertir objetos a JSON y viceversa
         Hibernate6Module hibernateModule = new Hibernate6Module();
         hibernateModule.configure(Hibernate6Module.Feature.FORCE_LAZY_LOADING, false);
         hibernateModule.configure(Hibernate6Module.Feature.USE_TRANSIENT_ANNOTATION, false);
+        // una referencia sin cargar (getReference) se serializa como {"clienteId": 3} en lugar de null
+        hibernateModule.configure(Hibernate6Module.Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS, true);
         objectMapper.registerModule(hibernateModule);
         // Configurar para manejar proxies lazy de Hibernate
         objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         // Ignorar propiedades de Hibernate proxy
         objectMapper.configure(SerializationFeature.FAIL_ON_SELF_REFERENCES, false);
+        streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
     
     public static <T> T fromJson(String json, Class<T> clazz) throws IOException {
@@ -31,4 +47,55 @@ public class JsonUtil { // utilidad para convertir objetos a JSON y viceversa
     public static String toJson(Object object) throws IOException {
         return objectMapper.writeValueAsString(object);
     }
+    
+    // escribe un array JSON elemento a elemento directamente en el stream de salida, sin construir el String completo
+    public static long writeJsonArray(OutputStream out, Stream<?> items) throws IOException {
+        return writeJsonArray(out, items, Integer.MAX_VALUE, () -> { });
+    }
+    
+    // igual, llamando a afterChunk cada chunkSize elementos ya serializados (y al final si queda un trozo): ahi se
+    // puede vaciar la sesion de Hibernate sin desacoplar una fila que aun no se ha escrito
+    public static long writeJsonArray(OutputStream out, Stream<?> items, int chunkSize, Runnable afterChunk) throws IOException {
+        long count = 0;
+        int inChunk = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET); // el OutputStream es del contenedor
+            generator.writeStartArray();
+            Iterator<?> it = items.iterator();
+            while (it.hasNext()) {
+                streamWriter.writeValue(generator, it.next());
+                count++;
+                if (++inChunk == chunkSize) {
+                    afterChunk.run();
+                    inChunk = 0;
+                }
+            }
+            generator.writeEndArray();
+        }
+        if (inChunk > 0) {
+            afterChunk.run();
+        }
+        return count;
+    }
+    
+    // lee un array JSON elemento a elemento desde el stream de entrada: solo hay un elemento deserializado a la vez,
+    // el cuerpo completo nunca se carga en memoria. Devuelve cuantos elementos se leyeron. Un cuerpo mal formado lanza
+    // JsonProcessingException (con linea y columna), el resto de IOException son de la conexion
+    public static <T> long readJsonArray(InputStream in, Class<T> clazz, Consumer<T> consumer) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(clazz);
+        long count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Se esperaba un array JSON");
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (parser.currentToken() == null) {
+                    throw new JsonParseException(parser, "Array JSON sin cerrar");
+                }
+                consumer.accept(reader.readValue(parser));
+                count++;
+            }
+        }
+        return count;
+    }
 }
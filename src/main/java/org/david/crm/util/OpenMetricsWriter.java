@@ -0,0 +1,86 @@
+package org.david.crm.util;
+
+// escribe metricas en formato de texto OpenMetrics (lo que lee Prometheus) sobre un StringBuilder que se reutiliza
+// entre scrapes: una vez que el buffer ha crecido hasta el tamaño de la respuesta, renderizar no reserva memoria
+public class OpenMetricsWriter {
+    
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    
+    private final StringBuilder out;
+    
+    public OpenMetricsWriter(StringBuilder out) {
+        this.out = out;
+    }
+    
+    // cabecera de una familia: los counter llevan el sufijo _total en las muestras, no en el nombre de la familia
+    public OpenMetricsWriter family(String name, String type, String help) {
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        return this;
+    }
+    
+    public OpenMetricsWriter sample(String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+        return this;
+    }
+    
+    public OpenMetricsWriter sample(String name, double value) {
+        out.append(name).append(' ').append(value).append('\n');
+        return this;
+    }
+    
+    public OpenMetricsWriter sample(String name, String label, String labelValue, long value) {
+        out.append(name).append('{');
+        label(label, labelValue);
+        out.append("} ").append(value).append('\n');
+        return this;
+    }
+    
+    public OpenMetricsWriter sample(String name, String label, String labelValue, double value) {
+        out.append(name).append('{');
+        label(label, labelValue);
+        out.append("} ").append(value).append('\n');
+        return this;
+    }
+    
+    public OpenMetricsWriter sample(String name, String label1, String value1, String label2, String value2, long value) {
+        out.append(name).append('{');
+        label(label1, value1);
+        out.append(',');
+        label(label2, value2);
+        out.append("} ").append(value).append('\n');
+        return this;
+    }
+    
+    // muestra de un histograma con el limite superior del cubo en segundos (le="+Inf" para el ultimo)
+    public OpenMetricsWriter bucket(String name, String label, String labelValue, double le, long value) {
+        out.append(name).append("_bucket{");
+        label(label, labelValue);
+        out.append(",le=\"");
+        if (Double.isInfinite(le)) {
+            out.append("+Inf");
+        } else {
+            out.append(le);
+        }
+        out.append("\"} ").append(value).append('\n');
+        return this;
+    }
+    
+    public void eof() {
+        out.append("# EOF\n");
+    }
+    
+    private void label(String name, String value) { // los valores van entre comillas con \, " y saltos de linea escapados
+        out.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '"': out.append("\\\""); break;
+                case '\n': out.append("\\n"); break;
+                default: out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}